@@ -0,0 +1,102 @@
+package top.colommar.chatapp.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import top.colommar.chatapp.admission.AdmissionController;
+import top.colommar.chatapp.admission.AdmissionProperties;
+import top.colommar.chatapp.event.EphemeralEventRelay;
+import top.colommar.chatapp.inbox.ConversationSummaries;
+import top.colommar.chatapp.metrics.ChatMetrics;
+import top.colommar.chatapp.service.ChatServerHandler;
+import top.colommar.chatapp.trace.MessageTracer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试公用的夹具：在 EmbeddedChannel 上挂载真实的 ChatServerHandler，仓库使用内存桩
+ */
+final class ChatFixture {
+
+    static final String PASSWORD = "pw";
+
+    final InMemoryRepositories repositories = new InMemoryRepositories();
+    final ChatMetrics metrics = new ChatMetrics(new SimpleMeterRegistry());
+    final AdmissionController admission = new AdmissionController(unlimited(), new SimpleMeterRegistry());
+    final EphemeralEventRelay eventRelay = new EphemeralEventRelay(300, metrics);
+    // 不采样；基准测试进程未开启 JFR 录制时 trace 为空操作
+    final MessageTracer tracer = new MessageTracer(0, 0);
+    // 写回只进内存桩，间隔调大避免后台线程干扰测量
+    final ConversationSummaries summaries = new ConversationSummaries(repositories.conversations(),
+            repositories.readMarkers(), 60_000);
+
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    /**
+     * 建立一个未登录的连接。EmbeddedChannel 默认共用同一个 ChannelId，这里必须显式分配
+     */
+    EmbeddedChannel connect() {
+        ChatServerHandler handler = new ChatServerHandler(repositories.users(), repositories.messages(),
+                repositories.chatFiles(), metrics, admission, eventRelay, tracer, summaries);
+        EmbeddedChannel channel = new EmbeddedChannel(DefaultChannelId.newInstance(), handler);
+        channels.add(channel);
+        return channel;
+    }
+
+    /**
+     * 注册并登录一个用户，丢弃登录过程中产生的所有出站帧
+     */
+    EmbeddedChannel login(String username) {
+        repositories.addUser(username, PASSWORD);
+        EmbeddedChannel channel = connect();
+        send(channel, loginJson(username));
+        for (EmbeddedChannel c : channels) {
+            drain(c);
+        }
+        return channel;
+    }
+
+    /**
+     * 基准测试在单个连接上高速发送，限速仍然生效（计入令牌桶开销），但额度足够大不会触发拒绝
+     */
+    private static AdmissionProperties unlimited() {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.getLimits().replaceAll((type, limit) -> new AdmissionProperties.Limit(1e12, Integer.MAX_VALUE));
+        return properties;
+    }
+
+    static String loginJson(String username) {
+        return "{\"type\":\"login\",\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}";
+    }
+
+    static void send(EmbeddedChannel channel, String json) {
+        channel.writeInbound(new TextWebSocketFrame(json));
+    }
+
+    /**
+     * 取出并释放通道上所有出站帧
+     *
+     * @return 出站帧的总字节数，交给 Blackhole 防止死代码消除
+     */
+    static long drain(EmbeddedChannel channel) {
+        long bytes = 0;
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            if (msg instanceof TextWebSocketFrame frame) {
+                bytes += frame.content().readableBytes();
+            }
+            ReferenceCountUtil.release(msg);
+        }
+        return bytes;
+    }
+
+    void close() {
+        for (EmbeddedChannel channel : channels) {
+            channel.finishAndReleaseAll();
+        }
+        channels.clear();
+    }
+}
@@ -0,0 +1,55 @@
+package top.colommar.chatapp.benchmark;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群聊扇出：一条群消息写给 N 个在线连接
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupFanoutBenchmark {
+
+    private static final String GROUP_MESSAGE = "{\"type\":\"message\",\"content\":\"hello everyone\"}";
+
+    @Param({"10", "100", "1000"})
+    public int recipients;
+
+    private ChatFixture fixture;
+    private EmbeddedChannel sender;
+    private final List<EmbeddedChannel> receivers = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        fixture = new ChatFixture();
+        sender = fixture.login("sender");
+        for (int i = 0; i < recipients; i++) {
+            receivers.add(fixture.login("user" + i));
+        }
+        ChatFixture.drain(sender);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+        receivers.clear();
+    }
+
+    @Benchmark
+    public void groupMessage(Blackhole bh) {
+        ChatFixture.send(sender, GROUP_MESSAGE);
+        bh.consume(ChatFixture.drain(sender));
+        for (EmbeddedChannel receiver : receivers) {
+            bh.consume(ChatFixture.drain(receiver));
+        }
+    }
+}
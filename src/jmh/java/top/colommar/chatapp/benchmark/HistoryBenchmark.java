@@ -0,0 +1,53 @@
+package top.colommar.chatapp.benchmark;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import top.colommar.chatapp.model.Message;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 历史消息序列化：登录时回放全部可见历史
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int historySize;
+
+    private ChatFixture fixture;
+    private EmbeddedChannel channel;
+    private String loginJson;
+
+    @Setup
+    public void setUp() {
+        fixture = new ChatFixture();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < historySize; i++) {
+            // 一半群聊、一半与 alice 的私聊，均对 alice 可见
+            String receiver = i % 2 == 0 ? null : "alice";
+            fixture.repositories.addMessage(new Message("user" + (i % 20), receiver,
+                    "history line " + i, new Date(now - historySize + i)));
+        }
+        channel = fixture.login("alice");
+        loginJson = ChatFixture.loginJson("alice");
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void replayHistoryOnLogin(Blackhole bh) {
+        ChatFixture.send(channel, loginJson);
+        bh.consume(ChatFixture.drain(channel));
+    }
+}
@@ -0,0 +1,136 @@
+package top.colommar.chatapp.benchmark;
+
+import top.colommar.chatapp.model.ChatFile;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.model.User;
+import top.colommar.chatapp.repository.ChatFileRepository;
+import top.colommar.chatapp.repository.ConversationReadMarkerRepository;
+import top.colommar.chatapp.repository.ConversationRepository;
+import top.colommar.chatapp.repository.UserRepository;
+import top.colommar.chatapp.storage.ConversationKey;
+import top.colommar.chatapp.storage.MessageStore;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于内存的仓库桩，只实现处理器热路径上用到的方法，使基准测试无需 MySQL
+ */
+public final class InMemoryRepositories {
+
+    private final List<User> users = new CopyOnWriteArrayList<>();
+    private final List<Message> messages = new CopyOnWriteArrayList<>();
+    private final List<ChatFile> chatFiles = new CopyOnWriteArrayList<>();
+
+    public void addUser(String username, String password) {
+        users.add(new User(username, password));
+    }
+
+    public void addMessage(Message message) {
+        if (message.getId() == null) {
+            message.setId((long) messages.size());
+        }
+        messages.add(message);
+    }
+
+    public void clearMessages() {
+        messages.clear();
+    }
+
+    public UserRepository users() {
+        return proxy(UserRepository.class, (method, args) -> switch (method) {
+            case "findByUsername" -> users.stream()
+                    .filter(u -> u.getUsername().equals(args[0]))
+                    .findFirst()
+                    .orElse(null);
+            case "findAll" -> new ArrayList<>(users);
+            case "save" -> {
+                users.add((User) args[0]);
+                yield args[0];
+            }
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    public MessageStore messages() {
+        return new MessageStore() {
+            @Override
+            public Message save(Message message) {
+                // 基准测试只关心处理器本身的开销，新消息不落入内存，避免历史无限增长
+                return message;
+            }
+
+            @Override
+            public List<Message> findVisibleTo(String username) {
+                List<Message> visible = new ArrayList<>();
+                for (Message message : messages) {
+                    if (message.getReceiver() == null || message.getSender().equals(username)
+                            || username.equals(message.getReceiver())) {
+                        visible.add(message);
+                    }
+                }
+                return visible;
+            }
+
+            @Override
+            public List<Message> findHistory(String username, String peer, long beforeId, int limit) {
+                String key = ConversationKey.of(username, peer);
+                List<Message> page = new ArrayList<>();
+                for (int i = messages.size() - 1; i >= 0 && page.size() < limit; i--) {
+                    Message message = messages.get(i);
+                    if (message.getId() < beforeId
+                            && key.equals(ConversationKey.of(message.getSender(), message.getReceiver()))) {
+                        page.add(0, message);
+                    }
+                }
+                return page;
+            }
+        };
+    }
+
+    public ChatFileRepository chatFiles() {
+        return proxy(ChatFileRepository.class, (method, args) -> switch (method) {
+            case "findAll" -> new ArrayList<>(chatFiles);
+            case "save" -> {
+                chatFiles.add((ChatFile) args[0]);
+                yield args[0];
+            }
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    public ConversationRepository conversations() {
+        return proxy(ConversationRepository.class, (method, args) -> switch (method) {
+            case "findAll" -> new ArrayList<>();
+            case "saveAll" -> args[0];
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    public ConversationReadMarkerRepository readMarkers() {
+        return proxy(ConversationReadMarkerRepository.class, (method, args) -> switch (method) {
+            case "findByUsername" -> new ArrayList<>();
+            case "saveAll" -> args[0];
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private interface Invocation {
+        Object invoke(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Invocation invocation) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + "(in-memory)";
+                };
+            }
+            return invocation.invoke(method.getName(), args);
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package top.colommar.chatapp.benchmark;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入站帧解码与分发：channelRead0 -> JSON 解析 -> 按类型分发 -> 回写
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboundDispatchBenchmark {
+
+    private static final String PRIVATE_MESSAGE =
+            "{\"type\":\"message\",\"receiver\":\"bob\",\"content\":\"hello, this is a typical chat line\"}";
+    private static final String UNSUPPORTED = "{\"type\":\"ping\"}";
+
+    private ChatFixture fixture;
+    private EmbeddedChannel alice;
+    private EmbeddedChannel bob;
+
+    @Setup
+    public void setUp() {
+        fixture = new ChatFixture();
+        alice = fixture.login("alice");
+        bob = fixture.login("bob");
+        ChatFixture.drain(alice);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void privateMessage(Blackhole bh) {
+        ChatFixture.send(alice, PRIVATE_MESSAGE);
+        bh.consume(ChatFixture.drain(alice));
+        bh.consume(ChatFixture.drain(bob));
+    }
+
+    @Benchmark
+    public void unsupportedType(Blackhole bh) {
+        ChatFixture.send(alice, UNSUPPORTED);
+        bh.consume(ChatFixture.drain(alice));
+    }
+}
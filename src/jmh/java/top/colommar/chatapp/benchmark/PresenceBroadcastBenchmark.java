@@ -0,0 +1,57 @@
+package top.colommar.chatapp.benchmark;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线状态广播：一次登录（无历史、无文件）触发的 userStatusUpdate 扇出
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PresenceBroadcastBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int online;
+
+    private ChatFixture fixture;
+    private EmbeddedChannel channel;
+    private String loginJson;
+    private final List<EmbeddedChannel> others = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        fixture = new ChatFixture();
+        for (int i = 0; i < online; i++) {
+            others.add(fixture.login("user" + i));
+        }
+        channel = fixture.login("alice");
+        loginJson = ChatFixture.loginJson("alice");
+        for (EmbeddedChannel other : others) {
+            ChatFixture.drain(other);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+        others.clear();
+    }
+
+    @Benchmark
+    public void loginPresenceUpdate(Blackhole bh) {
+        ChatFixture.send(channel, loginJson);
+        bh.consume(ChatFixture.drain(channel));
+        for (EmbeddedChannel other : others) {
+            bh.consume(ChatFixture.drain(other));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package top.colommar.chatapp.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回复编码：与 ChatServerHandler 相同的 Map -> JSON -> TextWebSocketFrame，再经 WebSocket 帧编码为字节
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplyEncodingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private EmbeddedChannel encoder;
+
+    @Setup
+    public void setUp() {
+        encoder = new EmbeddedChannel(new WebSocket13FrameEncoder(false));
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encodeMessageReply() throws Exception {
+        Map<String, Object> messageResponse = new HashMap<>();
+        messageResponse.put("type", "message");
+        messageResponse.put("sender", "alice");
+        messageResponse.put("content", "hello, this is a typical chat line");
+        messageResponse.put("receiver", "bob");
+        messageResponse.put("timestamp", System.currentTimeMillis());
+
+        String json = objectMapper.writeValueAsString(messageResponse);
+        encoder.writeOutbound(new TextWebSocketFrame(json));
+
+        int bytes = 0;
+        ByteBuf buf;
+        while ((buf = encoder.readOutbound()) != null) {
+            bytes += buf.readableBytes();
+            buf.release();
+        }
+        return bytes;
+    }
+}
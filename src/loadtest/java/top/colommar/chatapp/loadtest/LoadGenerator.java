@@ -0,0 +1,227 @@
+package top.colommar.chatapp.loadtest;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolConfig;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import org.springframework.boot.SpringApplication;
+import top.colommar.chatapp.ChatAppApplication;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * 模拟大量 WebSocket 客户端的压测工具
+ *
+ * 用法：mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--sessions=2000 --rate=5000 --embedded"
+ *
+ * 参数：
+ * --url              服务端地址，默认 ws://localhost:8081/chat
+ * --sessions         会话数，默认 500
+ * --connect-parallel 同时进行中的建连数，默认 100
+ * --rate             所有会话合计每秒发送的消息数，默认 1000
+ * --group-ratio      群聊消息占比（0~1），默认 0.1
+ * --duration         发送流量的秒数，默认 30
+ * --user-prefix      压测用户名前缀，默认 lt
+ * --embedded         在本进程内以 local（H2）配置启动服务端
+ */
+public final class LoadGenerator {
+
+    private static final int MAX_FRAME_PAYLOAD = 16 * 1024 * 1024;
+    private static final long TICK_MILLIS = 10;
+
+    private final Map<String, String> options;
+    private final LoadStats stats = new LoadStats();
+    private final List<LoadSession> sessions = new ArrayList<>();
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(parse(args)).run();
+    }
+
+    private void run() throws Exception {
+        URI uri = URI.create(option("url", "ws://localhost:8081/chat"));
+        int sessionCount = Integer.parseInt(option("sessions", "500"));
+        int connectParallel = Integer.parseInt(option("connect-parallel", "100"));
+        double rate = Double.parseDouble(option("rate", "1000"));
+        double groupRatio = Double.parseDouble(option("group-ratio", "0.1"));
+        int durationSeconds = Integer.parseInt(option("duration", "30"));
+        String userPrefix = option("user-prefix", "lt");
+
+        if (options.containsKey("embedded")) {
+            startEmbeddedServer(uri);
+        }
+
+        EventLoopGroup group = new NioEventLoopGroup();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            connectAll(group, uri, sessionCount, connectParallel, userPrefix);
+            awaitLogins(sessionCount);
+
+            long trafficStart = System.nanoTime();
+            ScheduledFuture<?> traffic = scheduler.scheduleAtFixedRate(
+                    new TrafficTick(rate, groupRatio), 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            for (int second = 1; second <= durationSeconds; second++) {
+                Thread.sleep(1000);
+                if (second % 5 == 0) {
+                    stats.printProgress(System.out, second);
+                }
+            }
+            traffic.cancel(false);
+            long trafficNanos = System.nanoTime() - trafficStart;
+            // 给在途消息留出回显时间
+            Thread.sleep(1000);
+            stats.printSummary(System.out, trafficNanos);
+        } finally {
+            scheduler.shutdownNow();
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+        System.exit(0);
+    }
+
+    private void connectAll(EventLoopGroup group, URI uri, int sessionCount, int connectParallel, String userPrefix)
+            throws InterruptedException {
+        Semaphore inFlight = new Semaphore(connectParallel);
+        stats.connectStartNanos.set(System.nanoTime());
+        for (int i = 0; i < sessionCount; i++) {
+            LoadSession session = new LoadSession(userPrefix + i, "pw", stats);
+            sessions.add(session);
+            inFlight.acquire();
+            ChannelFuture future = bootstrap(group, uri, session).connect(uri.getHost(), port(uri));
+            future.addListener(f -> {
+                inFlight.release();
+                if (!f.isSuccess()) {
+                    stats.failures.increment();
+                }
+            });
+        }
+    }
+
+    private void awaitLogins(int sessionCount) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(120);
+        while (stats.loggedIn.sum() + stats.failures.sum() < sessionCount && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        System.out.printf("connect storm finished: %d logged in, %d failures, %.1f ms%n",
+                stats.loggedIn.sum(), stats.failures.sum(),
+                (stats.lastLoginNanos.get() - stats.connectStartNanos.get()) / 1e6);
+    }
+
+    private static Bootstrap bootstrap(EventLoopGroup group, URI uri, LoadSession session) {
+        WebSocketClientProtocolConfig config = WebSocketClientProtocolConfig.newBuilder()
+                .webSocketUri(uri)
+                .maxFramePayloadLength(MAX_FRAME_PAYLOAD)
+                .build();
+        return new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new HttpClientCodec())
+                                .addLast(new HttpObjectAggregator(65536))
+                                .addLast(new WebSocketClientProtocolHandler(config))
+                                .addLast(session);
+                    }
+                });
+    }
+
+    /**
+     * 每个 tick 按目标速率发送一批消息，小数部分累积到下一个 tick
+     */
+    private final class TrafficTick implements Runnable {
+
+        private final double perTick;
+        private final double groupRatio;
+        private double carry;
+
+        TrafficTick(double rate, double groupRatio) {
+            this.perTick = rate * TICK_MILLIS / 1000.0;
+            this.groupRatio = groupRatio;
+        }
+
+        @Override
+        public void run() {
+            carry += perTick;
+            int batch = (int) carry;
+            carry -= batch;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < batch; i++) {
+                LoadSession sender = sessions.get(random.nextInt(sessions.size()));
+                if (!sender.isReady()) {
+                    continue;
+                }
+                if (random.nextDouble() < groupRatio) {
+                    sender.sendMessage(null);
+                } else {
+                    LoadSession receiver = sessions.get(random.nextInt(sessions.size()));
+                    sender.sendMessage(receiver.username);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在后台线程中以 local 配置启动应用，并等待 WebSocket 端口可连
+     */
+    private static void startEmbeddedServer(URI uri) throws InterruptedException {
+        Thread server = new Thread(() -> SpringApplication.run(ChatAppApplication.class,
+                "--spring.profiles.active=local"), "embedded-chat-server");
+        server.setDaemon(true);
+        server.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(uri.getHost(), port(uri)), 200);
+                return;
+            } catch (Exception e) {
+                Thread.sleep(200);
+            }
+        }
+        throw new IllegalStateException("embedded server did not open port " + port(uri));
+    }
+
+    private static int port(URI uri) {
+        return uri.getPort() == -1 ? 80 : uri.getPort();
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq == -1) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,168 @@
+package top.colommar.chatapp.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个模拟客户端会话：握手完成后先注册再登录，登录成功后才参与发送流量
+ */
+final class LoadSession extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+
+    static final String CONTENT_PREFIX = "lt:";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    final String username;
+    private final String password;
+    private final LoadStats stats;
+
+    private volatile Channel channel;
+    private volatile boolean ready;
+    private volatile long loggedInAtNanos;
+    // 登录前最近一次发出的请求类型，被服务端限速或过载拒绝时据此重试
+    private volatile String pendingStep;
+
+    LoadSession(String username, String password, LoadStats stats) {
+        this.username = username;
+        this.password = password;
+        this.stats = stats;
+    }
+
+    boolean isReady() {
+        return ready && channel != null && channel.isActive();
+    }
+
+    /**
+     * 发送一条聊天消息，内容中携带发送时刻的 nanoTime，用于计算端到端延迟
+     *
+     * @param receiver 接收者，null 表示群聊
+     */
+    void sendMessage(String receiver) {
+        Channel ch = channel;
+        if (ch == null || !ch.isWritable()) {
+            return;
+        }
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", "message");
+        message.put("content", CONTENT_PREFIX + System.nanoTime());
+        if (receiver != null) {
+            message.put("receiver", receiver);
+        }
+        write(message);
+        stats.sent.increment();
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+            channel = ctx.channel();
+            stats.connected.increment();
+            writeStep("register");
+        } else if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_TIMEOUT) {
+            stats.failures.increment();
+            ctx.close();
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) throws Exception {
+        Map<?, ?> data = objectMapper.readValue(frame.text(), Map.class);
+        Object type = data.get("type");
+        if ("register".equals(type)) {
+            // 用户已存在时注册失败，直接登录即可
+            writeStep("login");
+        } else if ("login".equals(type)) {
+            if ("success".equals(data.get("status"))) {
+                loggedInAtNanos = System.nanoTime();
+                ready = true;
+                stats.loginCompleted();
+            } else {
+                stats.failures.increment();
+                ctx.close();
+            }
+        } else if ("message".equals(type)) {
+            onMessage(data);
+        } else if ("error".equals(type)) {
+            stats.errorsFromServer.increment();
+            retryIfRejected(ctx, data);
+        }
+    }
+
+    /**
+     * 登录完成前被 busy / rate_limited 拒绝时，按服务端建议的时间重发同一步
+     */
+    private void retryIfRejected(ChannelHandlerContext ctx, Map<?, ?> data) {
+        Object code = data.get("code");
+        String step = pendingStep;
+        if (ready || step == null || !("busy".equals(code) || "rate_limited".equals(code))) {
+            return;
+        }
+        long delay = data.get("retryAfterMs") instanceof Number n ? n.longValue() : 1000;
+        ctx.executor().schedule(() -> writeStep(step), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void onMessage(Map<?, ?> data) {
+        Object content = data.get("content");
+        if (!ready || !(content instanceof String text) || !text.startsWith(CONTENT_PREFIX)) {
+            return;
+        }
+        long sentAt;
+        try {
+            sentAt = Long.parseLong(text.substring(CONTENT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        // 登录时回放的历史消息不计入延迟
+        if (sentAt < loggedInAtNanos) {
+            return;
+        }
+        stats.received.increment();
+        if (username.equals(data.get("sender"))) {
+            stats.recordLatency(stats.echoLatency, sentAt);
+        } else {
+            stats.recordLatency(stats.deliveryLatency, sentAt);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        ready = false;
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        stats.failures.increment();
+        ctx.close();
+    }
+
+    private void writeStep(String type) {
+        pendingStep = type;
+        write(credentials(type));
+    }
+
+    private Map<String, Object> credentials(String type) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", type);
+        message.put("username", username);
+        message.put("password", password);
+        return message;
+    }
+
+    private void write(Map<String, Object> message) {
+        try {
+            channel.writeAndFlush(new TextWebSocketFrame(objectMapper.writeValueAsString(message)));
+        } catch (Exception e) {
+            stats.failures.increment();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package top.colommar.chatapp.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测统计：连接风暴耗时、吞吐量以及端到端延迟分布
+ */
+final class LoadStats {
+
+    private static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    // 发送者收到自己消息回显的往返延迟（包含服务端持久化）
+    final Histogram echoLatency = new ConcurrentHistogram(MAX_TRACKABLE_NANOS, 3);
+    // 其他接收者收到消息的投递延迟
+    final Histogram deliveryLatency = new ConcurrentHistogram(MAX_TRACKABLE_NANOS, 3);
+
+    final LongAdder connected = new LongAdder();
+    final LongAdder loggedIn = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder sent = new LongAdder();
+    final LongAdder received = new LongAdder();
+    final LongAdder errorsFromServer = new LongAdder();
+
+    final AtomicLong connectStartNanos = new AtomicLong();
+    final AtomicLong lastLoginNanos = new AtomicLong();
+
+    void recordLatency(Histogram histogram, long sentAtNanos) {
+        long latency = System.nanoTime() - sentAtNanos;
+        if (latency >= 0 && latency <= MAX_TRACKABLE_NANOS) {
+            histogram.recordValue(latency);
+        }
+    }
+
+    void loginCompleted() {
+        loggedIn.increment();
+        lastLoginNanos.accumulateAndGet(System.nanoTime(), Math::max);
+    }
+
+    void printProgress(PrintStream out, long elapsedSeconds) {
+        out.printf("[%3ds] logged in %d, sent %d, received %d, failures %d, server errors %d%n",
+                elapsedSeconds, loggedIn.sum(), sent.sum(), received.sum(), failures.sum(), errorsFromServer.sum());
+    }
+
+    void printSummary(PrintStream out, long trafficNanos) {
+        double trafficSeconds = trafficNanos / 1e9;
+        out.println();
+        out.println("==== Load test summary ====");
+        out.printf("sessions: connected %d, logged in %d, failures %d%n",
+                connected.sum(), loggedIn.sum(), failures.sum());
+        if (lastLoginNanos.get() > 0) {
+            out.printf("connect storm: %.1f ms until last login%n",
+                    (lastLoginNanos.get() - connectStartNanos.get()) / 1e6);
+        }
+        out.printf("throughput: sent %.1f msg/s, received %.1f frames/s over %.1f s%n",
+                sent.sum() / trafficSeconds, received.sum() / trafficSeconds, trafficSeconds);
+        out.printf("server error frames: %d%n", errorsFromServer.sum());
+        printHistogram(out, "echo latency (sender round trip)", echoLatency);
+        printHistogram(out, "delivery latency (other receivers)", deliveryLatency);
+    }
+
+    private static void printHistogram(PrintStream out, String title, Histogram histogram) {
+        out.println(title + ":");
+        if (histogram.getTotalCount() == 0) {
+            out.println("  no samples");
+            return;
+        }
+        out.printf("  count %d, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(90) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6);
+    }
+}
@@ -0,0 +1,216 @@
+package top.colommar.chatapp.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局准入控制：周期性地向每个事件循环投递探测任务测量排队延迟，并统计消息持久化的耗时，
+ * 事件循环延迟或持久化耗时连续多次采样超过阈值即进入过载状态，此时新消息以 busy 错误拒绝、新连接直接返回 503。
+ * 两项指标都回落到阈值一半以下才解除，避免在阈值附近反复切换。
+ *
+ * 进行中的持久化数量只作为指标：持久化在工作线程上同步执行，其数量受线程数限制，正常并发下也会接近线程数，不能说明存储已饱和。
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(AdmissionProperties.class)
+public class AdmissionController {
+
+    // 需连续超标这么多次采样才视为过载，单次 GC 停顿、冷启动或个别慢写入不触发
+    private static final int SAMPLES_TO_TRIP = 3;
+
+    private final AdmissionProperties properties;
+    private final MeterRegistry registry;
+
+    private final List<LagProbe> probes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    // 上次采样以来完成的持久化中最长的耗时
+    private final AtomicLong slowestPersistNanos = new AtomicLong();
+    private final Map<String, Counter> rejectedCounters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sampler;
+
+    // 最近一次持久化完成的时间；没有进行中的持久化时为下一次开始的时间
+    private volatile long lastPersistProgress;
+
+    private volatile long eventLoopLagNanos;
+    private volatile long persistLatencyNanos;
+    private volatile boolean overloaded;
+    private int lagSamplesOverThreshold;
+    private int persistSamplesOverThreshold;
+
+    public AdmissionController(AdmissionProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.registry = registry;
+        this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "admission-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("chat.eventloop.lag", this, c -> c.eventLoopLagNanos / 1_000_000d)
+                .description("事件循环中任务的最大排队延迟")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("chat.persistence.pending", pendingWrites, AtomicInteger::get)
+                .description("进行中的消息持久化数量")
+                .register(registry);
+        Gauge.builder("chat.persistence.latency", this, c -> c.persistLatencyNanos / 1_000_000d)
+                .description("最近一个采样周期内最慢的消息持久化耗时")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("chat.admission.overloaded", this, c -> c.overloaded ? 1 : 0)
+                .description("是否处于过载状态")
+                .register(registry);
+    }
+
+    /**
+     * 开始采样一组事件循环的任务延迟
+     */
+    public void monitor(EventLoopGroup group) {
+        for (EventExecutor executor : group) {
+            probes.add(new LagProbe(executor));
+        }
+        long interval = properties.getSampleIntervalMs();
+        sampler.scheduleWithFixedDelay(this::sample, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        long maxLag = 0;
+        for (LagProbe probe : probes) {
+            maxLag = Math.max(maxLag, probe.sample(now));
+        }
+        eventLoopLagNanos = maxLag;
+
+        // 已完成的最慢一次；存储卡住时迟迟没有完成，以停滞的时间计
+        long persistLatency = slowestPersistNanos.getAndSet(0);
+        if (pendingWrites.get() > 0) {
+            persistLatency = Math.max(persistLatency, now - lastPersistProgress);
+        }
+        persistLatencyNanos = persistLatency;
+
+        long maxLagNanos = TimeUnit.MILLISECONDS.toNanos(properties.getMaxEventLoopLagMs());
+        long maxPersistNanos = TimeUnit.MILLISECONDS.toNanos(properties.getMaxPersistLatencyMs());
+        lagSamplesOverThreshold = maxLag > maxLagNanos ? lagSamplesOverThreshold + 1 : 0;
+        persistSamplesOverThreshold = persistLatency > maxPersistNanos ? persistSamplesOverThreshold + 1 : 0;
+        boolean wasOverloaded = overloaded;
+        if (!wasOverloaded && (lagSamplesOverThreshold >= SAMPLES_TO_TRIP || persistSamplesOverThreshold >= SAMPLES_TO_TRIP)) {
+            overloaded = true;
+            log.warn("进入过载状态：事件循环延迟 {} ms，持久化耗时 {} ms", TimeUnit.NANOSECONDS.toMillis(maxLag),
+                    TimeUnit.NANOSECONDS.toMillis(persistLatency));
+        } else if (wasOverloaded && maxLag < maxLagNanos / 2 && persistLatency < maxPersistNanos / 2) {
+            overloaded = false;
+            log.info("解除过载状态");
+        }
+    }
+
+    /**
+     * 是否应拒绝新工作，取最近一次采样的结论
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /**
+     * 为某类消息新建一个令牌桶，该类型未配置限速时返回 null
+     */
+    public TokenBucket newBucket(String type) {
+        AdmissionProperties.Limit limit = properties.getLimits().get(type);
+        return limit == null ? null : new TokenBucket(limit.getPerSecond(), limit.getBurst());
+    }
+
+    /**
+     * 一次消息持久化开始，返回的开始时间（System.nanoTime()）交给 {@link #persistFinished(long)}
+     */
+    public long persistStarted() {
+        long now = System.nanoTime();
+        if (pendingWrites.getAndIncrement() == 0) {
+            lastPersistProgress = now;
+        }
+        return now;
+    }
+
+    public void persistFinished(long startedAt) {
+        long now = System.nanoTime();
+        lastPersistProgress = now;
+        pendingWrites.decrementAndGet();
+        slowestPersistNanos.accumulateAndGet(now - startedAt, Math::max);
+    }
+
+    public long retryAfterMs() {
+        return properties.getRetryAfterMs();
+    }
+
+    /**
+     * 记录一次拒绝
+     *
+     * @param reason rate_limited / busy / connection
+     */
+    public void rejected(String reason) {
+        rejectedCounters.computeIfAbsent(reason, r -> Counter.builder("chat.admission.rejected")
+                .description("被限速或过载保护拒绝的请求数")
+                .tag("reason", r)
+                .register(registry)).increment();
+    }
+
+    @PreDestroy
+    public void close() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * 单个事件循环的延迟探测：上一个探测任务执行后才投递下一个，
+     * 若探测任务迟迟未执行，则以其已等待的时间作为当前延迟，这样事件循环卡死时延迟会持续增长
+     */
+    private static final class LagProbe implements Runnable {
+
+        private final EventExecutor executor;
+        private volatile long submittedAt;
+        private volatile long lastLag;
+        private volatile boolean pending;
+
+        LagProbe(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        long sample(long now) {
+            if (pending) {
+                return now - submittedAt;
+            }
+            if (!executor.isShuttingDown()) {
+                submittedAt = now;
+                pending = true;
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // 事件循环正在关闭
+                    pending = false;
+                }
+            }
+            return lastLag;
+        }
+
+        @Override
+        public void run() {
+            lastLag = System.nanoTime() - submittedAt;
+            pending = false;
+        }
+    }
+}
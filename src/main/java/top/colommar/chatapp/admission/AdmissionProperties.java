@@ -0,0 +1,64 @@
+package top.colommar.chatapp.admission;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 过载保护配置，前缀 chat.admission
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.admission")
+public class AdmissionProperties {
+
+    /**
+     * 每个连接按消息类型的限速，未配置的类型不限速
+     */
+    private Map<String, Limit> limits = new HashMap<>(Map.of(
+            "message", new Limit(10, 20),
+            "login", new Limit(1, 5),
+            "register", new Limit(1, 3),
+            "typing", new Limit(20, 40),
+            "read", new Limit(20, 40),
+            "history", new Limit(5, 10)));
+
+    /**
+     * 事件循环任务延迟连续多次采样超过该值即进入过载状态
+     */
+    private long maxEventLoopLagMs = 200;
+
+    /**
+     * 消息持久化耗时连续多次采样超过该值即进入过载状态
+     */
+    private long maxPersistLatencyMs = 500;
+
+    /**
+     * 事件循环延迟与持久化耗时的采样间隔
+     */
+    private long sampleIntervalMs = 100;
+
+    /**
+     * 过载时建议客户端等待多久再重试
+     */
+    private long retryAfterMs = 1000;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+
+        /**
+         * 每秒补充的令牌数
+         */
+        private double perSecond;
+
+        /**
+         * 桶容量，即允许的突发条数
+         */
+        private int burst;
+    }
+}
@@ -0,0 +1,41 @@
+package top.colommar.chatapp.admission;
+
+/**
+ * 令牌桶：按固定速率补充令牌，最多积攒 burst 个，每条消息消耗一个
+ *
+ * 每个连接各自持有，只在该连接所属的事件循环线程上访问，因此不做同步
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double perSecond, int burst) {
+        this(perSecond, burst, System.nanoTime());
+    }
+
+    TokenBucket(double perSecond, int burst, long now) {
+        this.capacity = Math.max(1, burst);
+        this.tokensPerNano = perSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
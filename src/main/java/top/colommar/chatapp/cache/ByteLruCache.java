@@ -0,0 +1,15 @@
+package top.colommar.chatapp.cache;
+
+/**
+ * 按总字节数限制容量的 LRU 缓存
+ */
+public class ByteLruCache<K> extends LruCache<K, byte[]> {
+
+    public ByteLruCache(long maxBytes) {
+        super(maxBytes, value -> value.length);
+    }
+
+    public long totalBytes() {
+        return totalWeight();
+    }
+}
@@ -0,0 +1,63 @@
+package top.colommar.chatapp.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+/**
+ * 以 Micrometer 标准缓存指标导出 LruCache：cache.gets{result=hit|miss}、cache.puts、cache.evictions、cache.size，
+ * 另加 cache.weight 表示当前总权重（字节缓存即字节数）
+ */
+public class LruCacheMetrics extends CacheMeterBinder<LruCache<?, ?>> {
+
+    public LruCacheMetrics(LruCache<?, ?> cache, String cacheName) {
+        super(cache, cacheName, Tags.empty());
+    }
+
+    /**
+     * 绑定缓存指标并返回缓存本身，便于在字段初始化时直接使用
+     */
+    public static <C extends LruCache<?, ?>> C monitor(MeterRegistry registry, C cache, String cacheName) {
+        new LruCacheMetrics(cache, cacheName).bindTo(registry);
+        return cache;
+    }
+
+    @Override
+    protected Long size() {
+        LruCache<?, ?> cache = getCache();
+        return cache == null ? null : (long) cache.size();
+    }
+
+    @Override
+    protected long hitCount() {
+        LruCache<?, ?> cache = getCache();
+        return cache == null ? 0 : cache.hitCount();
+    }
+
+    @Override
+    protected Long missCount() {
+        LruCache<?, ?> cache = getCache();
+        return cache == null ? null : cache.missCount();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        LruCache<?, ?> cache = getCache();
+        return cache == null ? null : cache.evictionCount();
+    }
+
+    @Override
+    protected long putCount() {
+        LruCache<?, ?> cache = getCache();
+        return cache == null ? 0 : cache.putCount();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        Gauge.builder("cache.weight", getCache(), LruCache::totalWeight)
+                .tags(getTagsWithCacheName())
+                .description("缓存中所有条目的总权重")
+                .register(registry);
+    }
+}
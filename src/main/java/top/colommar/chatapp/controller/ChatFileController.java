@@ -2,26 +2,34 @@ package top.colommar.chatapp.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import top.colommar.chatapp.media.ChatFileCatalog;
+import top.colommar.chatapp.media.HotFileCache;
+import top.colommar.chatapp.media.ThumbnailService;
 import top.colommar.chatapp.model.ChatFile;
 import top.colommar.chatapp.repository.ChatFileRepository;
 import top.colommar.chatapp.service.ChatServerHandler;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static top.colommar.chatapp.service.ChatServerHandler.userStatus;
 
@@ -33,11 +41,19 @@ public class ChatFileController {
 
     private final ChatFileRepository chatFileRepository;
     private final ChatServerHandler chatServerHandler;
+    private final ChatFileCatalog chatFileCatalog;
+    private final HotFileCache hotFileCache;
+    private final ThumbnailService thumbnailService;
 
     @Autowired
-    public ChatFileController(ChatFileRepository chatFileRepository, ChatServerHandler chatServerHandler) {
+    public ChatFileController(ChatFileRepository chatFileRepository, ChatServerHandler chatServerHandler,
+                              ChatFileCatalog chatFileCatalog, HotFileCache hotFileCache,
+                              ThumbnailService thumbnailService) {
         this.chatFileRepository = chatFileRepository;
         this.chatServerHandler = chatServerHandler;
+        this.chatFileCatalog = chatFileCatalog;
+        this.hotFileCache = hotFileCache;
+        this.thumbnailService = thumbnailService;
     }
 
     /**
@@ -82,11 +98,11 @@ public class ChatFileController {
             chatFile.setTimestamp(System.currentTimeMillis());
 
             // 保存到数据库
-            ChatFile savedChatFile = chatFileRepository.save(chatFile);
+            ChatFile savedChatFile = chatFileCatalog.save(chatFile);
 
             // 生成文件信息的 JSON 响应
             Map<String, Object> fileResponse = new HashMap<>();
-            fileResponse.put("id", savedChatFile.getId());
+            fileResponse.put("id", String.valueOf(savedChatFile.getId()));
             fileResponse.put("fileName", savedChatFile.getFileName());
             fileResponse.put("filePath", savedChatFile.getFilePath());
             fileResponse.put("sender", savedChatFile.getSender());
@@ -100,6 +116,9 @@ public class ChatFileController {
                 chatServerHandler.broadcastFileList(key);
             }
 
+            // 图片在后台生成缩略图，完成后推送一帧 thumbnail 增量，客户端据此换上缩略图
+            thumbnailService.submit(savedChatFile, file.getContentType(), chatServerHandler::broadcastThumbnail);
+
             // 返回文件信息的 JSON 响应
             return ResponseEntity.ok(fileResponse);
 
@@ -113,36 +132,47 @@ public class ChatFileController {
     /**
      * 处理文件下载
      *
+     * 上传的文件以唯一文件名保存、从不修改，响应可被浏览器永久缓存；带 If-None-Match / If-Modified-Since 的请求
+     * 只查元数据缓存即可回复 304，不访问磁盘
+     *
      * @param id 文件 ID
-     * @return ResponseEntity<FileSystemResource>
+     * @return ResponseEntity<Resource>
      */
     @GetMapping("/download/{id}")
-    public ResponseEntity<FileSystemResource> downloadFile(@PathVariable Long id) {
-
-        log.warn(String.valueOf(id));
-
-        Optional<ChatFile> optionalFile = chatFileRepository.findById(id);
-        if (!optionalFile.isPresent()) {
+    public ResponseEntity<Resource> downloadFile(@PathVariable Long id, WebRequest request) throws IOException {
+        ChatFile chatFile = chatFileCatalog.find(id);
+        if (chatFile == null) {
             return ResponseEntity.notFound().build();
         }
-
-        ChatFile chatFile = optionalFile.get();
-
-        log.warn(String.valueOf(chatFile.toString()));
-
-        Path filePath = Paths.get(chatFile.getFilePath());
-        log.warn(String.valueOf(filePath));
-        File file = filePath.toFile();
-
-        if (!file.exists()) {
-            return ResponseEntity.notFound().build();
+        if (request.checkNotModified(etag(chatFile, "f"), chatFile.getTimestamp())) {
+            return null;
         }
 
-        FileSystemResource resource = new FileSystemResource(file);
+        Resource resource;
+        long length;
+        byte[] cached = hotFileCache.get(id);
+        if (cached != null) {
+            resource = new ByteArrayResource(cached);
+            length = cached.length;
+        } else {
+            Path filePath = Paths.get(chatFile.getFilePath());
+            try {
+                length = Files.size(filePath);
+            } catch (NoSuchFileException e) {
+                return ResponseEntity.notFound().build();
+            }
+            if (hotFileCache.admit(id, length)) {
+                byte[] content = Files.readAllBytes(filePath);
+                hotFileCache.put(id, content);
+                resource = new ByteArrayResource(content);
+                length = content.length;
+            } else {
+                resource = new FileSystemResource(filePath);
+            }
+        }
 
         // 设置下载的原始文件名
-        String originalFileName = extractOriginalFileName(file.getName());
-
+        String originalFileName = extractOriginalFileName(Paths.get(chatFile.getFilePath()).getFileName().toString());
 
         // 2024-11-26 17:46:42 [http-nio-8080-exec-1] WARN  o.a.coyote.http11.Http11Processor - The HTTP response header [Content-Disposition] with value [attachment; filename="参与协议书.pdf"] has been removed from the response because it is invalid
         // [Content-Disposition] warn
@@ -154,12 +184,60 @@ public class ChatFileController {
         // 指明为 UTF-8
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + URLEncoder.encode(originalFileName, StandardCharsets.UTF_8))
-                .contentLength(file.length())
+                .cacheControl(cacheControl(chatFile))
+                .eTag(etag(chatFile, "f"))
+                .lastModified(chatFile.getTimestamp())
+                .contentLength(length)
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
                 .body(resource);
 
     }
 
+    /**
+     * 获取图片缩略图
+     *
+     * @param id 文件 ID
+     * @return 缩略图内容，文件不存在或尚未生成缩略图时返回 404
+     */
+    @GetMapping("/thumbnail/{id}")
+    public ResponseEntity<byte[]> thumbnail(@PathVariable Long id, WebRequest request) throws IOException {
+        ChatFile chatFile = chatFileCatalog.find(id);
+        if (chatFile == null || chatFile.getThumbnailPath() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(etag(chatFile, "t"), chatFile.getTimestamp())) {
+            return null;
+        }
+        byte[] bytes = thumbnailService.load(chatFile);
+        if (bytes == null) {
+            return ResponseEntity.notFound().build();
+        }
+        MediaType contentType = chatFile.getThumbnailPath().endsWith(".png") ? MediaType.IMAGE_PNG : MediaType.IMAGE_JPEG;
+        return ResponseEntity.ok()
+                .cacheControl(cacheControl(chatFile))
+                .eTag(etag(chatFile, "t"))
+                .lastModified(chatFile.getTimestamp())
+                .contentType(contentType)
+                .contentLength(bytes.length)
+                .body(bytes);
+    }
+
+    /**
+     * 文件内容不变，ETag 由 id 与上传时间组成即可，无需读取文件计算摘要
+     */
+    private static String etag(ChatFile chatFile, String variant) {
+        return "\"" + variant + chatFile.getId() + "-" + chatFile.getTimestamp() + "\"";
+    }
+
+    /**
+     * 私聊文件只允许浏览器缓存，群聊文件允许共享缓存
+     */
+    private static CacheControl cacheControl(ChatFile chatFile) {
+        CacheControl cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).immutable();
+        boolean group = chatFile.getReceiver() == null || chatFile.getReceiver().isEmpty();
+        return group ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+    }
+
     /**
      * 获取所有文件历史记录
      *
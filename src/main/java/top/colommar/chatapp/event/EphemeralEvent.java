@@ -0,0 +1,21 @@
+package top.colommar.chatapp.event;
+
+import java.util.Map;
+
+/**
+ * 不落库的瞬时事件，如正在输入、已读回执
+ *
+ * @param type     事件类型：typing / read
+ * @param sender   发出事件的用户
+ * @param receiver 私聊对象，null 表示群聊
+ * @param frame    发给接收方的完整消息体
+ */
+public record EphemeralEvent(String type, String sender, String receiver, Map<String, Object> frame) {
+
+    /**
+     * 合并键：同一发送者在同一会话中的同类事件互相覆盖
+     */
+    public String coalescingKey() {
+        return receiver == null ? type : type + '\u0000' + receiver;
+    }
+}
@@ -0,0 +1,66 @@
+package top.colommar.chatapp.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import top.colommar.chatapp.metrics.ChatMetrics;
+import top.colommar.chatapp.service.ChatServerHandler;
+
+/**
+ * 瞬时事件通道：不经过消息存储，按（发送者, 会话）合并后直接投递给在线的接收方，离线用户直接丢弃
+ */
+@Slf4j
+@Component
+public class EphemeralEventRelay {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final long coalesceWindowMs;
+    private final ChatMetrics chatMetrics;
+
+    public EphemeralEventRelay(@Value("${chat.events.coalesce-window-ms:300}") long coalesceWindowMs,
+                               ChatMetrics chatMetrics) {
+        this.coalesceWindowMs = coalesceWindowMs;
+        this.chatMetrics = chatMetrics;
+    }
+
+    /**
+     * 为一个连接创建合并器，绑定到该连接的事件循环
+     */
+    public EventCoalescer<EphemeralEvent> coalescer(EventExecutor executor) {
+        return new EventCoalescer<>(executor, coalesceWindowMs, this::deliver, chatMetrics::eventCoalesced);
+    }
+
+    void deliver(EphemeralEvent event) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(event.frame());
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing {} event", event.type(), e);
+            return;
+        }
+        TextWebSocketFrame frame = new TextWebSocketFrame(json);
+        int recipients = 0;
+        if (event.receiver() != null) {
+            Channel channel = ChatServerHandler.channelOf(event.receiver());
+            if (channel != null && channel.isActive()) {
+                channel.writeAndFlush(frame.retainedDuplicate());
+                recipients++;
+            }
+        } else {
+            for (Channel channel : ChatServerHandler.onlineChannels()) {
+                if (channel.isActive() && !event.sender().equals(ChatServerHandler.usernameOf(channel))) {
+                    channel.writeAndFlush(frame.retainedDuplicate());
+                    recipients++;
+                }
+            }
+        }
+        frame.release();
+        chatMetrics.fanout("ephemeral", recipients);
+    }
+}
@@ -0,0 +1,80 @@
+package top.colommar.chatapp.event;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 按键合并事件：窗口外的第一条立即发出并开启窗口，窗口内后到的只保留最新一条，窗口结束时发出并开启下一个窗口
+ *
+ * 每个键在每个窗口最多发出一条，状态类事件（正在输入、已读位置）只关心最新值，中间值可以丢弃。
+ * 只在绑定的事件循环线程上调用，不做同步。
+ */
+public final class EventCoalescer<T> {
+
+    private final EventExecutor executor;
+    private final long windowMs;
+    private final Consumer<T> sink;
+    private final Runnable onSuperseded;
+    private final Map<String, Window<T>> windows = new HashMap<>();
+
+    /**
+     * @param sink         事件真正发出时的回调
+     * @param onSuperseded 窗口内有事件被更新的事件覆盖时回调，用于统计
+     */
+    public EventCoalescer(EventExecutor executor, long windowMs, Consumer<T> sink, Runnable onSuperseded) {
+        this.executor = executor;
+        this.windowMs = windowMs;
+        this.sink = sink;
+        this.onSuperseded = onSuperseded;
+    }
+
+    public void offer(String key, T event) {
+        Window<T> window = windows.get(key);
+        if (window == null) {
+            sink.accept(event);
+            open(key);
+            return;
+        }
+        if (window.latest != null) {
+            onSuperseded.run();
+        }
+        window.latest = event;
+    }
+
+    private void open(String key) {
+        Window<T> window = new Window<>();
+        windows.put(key, window);
+        window.timer = executor.schedule(() -> close(key, window), windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void close(String key, Window<T> window) {
+        if (windows.get(key) != window) {
+            return;
+        }
+        windows.remove(key);
+        if (window.latest != null) {
+            sink.accept(window.latest);
+            open(key);
+        }
+    }
+
+    /**
+     * 丢弃所有未发出的事件，连接断开时调用
+     */
+    public void cancel() {
+        for (Window<T> window : windows.values()) {
+            window.timer.cancel(false);
+        }
+        windows.clear();
+    }
+
+    private static final class Window<T> {
+        private T latest;
+        private ScheduledFuture<?> timer;
+    }
+}
@@ -0,0 +1,22 @@
+package top.colommar.chatapp.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 按 chat.id.node 创建本节点的 id 生成器，多节点部署时每个节点必须配置不同的节点号（0-1023）
+ */
+@Slf4j
+@Configuration
+public class IdConfig {
+
+    @Bean
+    public Snowflake snowflake(@Value("${chat.id.node:0}") int node) {
+        Snowflake snowflake = new Snowflake(node);
+        Snowflake.setGlobal(snowflake);
+        log.info("Snowflake id generator using node {}", node);
+        return snowflake;
+    }
+}
@@ -0,0 +1,67 @@
+package top.colommar.chatapp.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake 风格的 64 位 id：41 位自 EPOCH 起的毫秒数 | 10 位节点号 | 12 位毫秒内序号
+ *
+ * 同一节点生成的 id 严格递增，不同节点的 id 不会冲突，因此既能作主键，也能直接作为按时间排序的分页游标。
+ * 生成不加锁：毫秒数与序号打包在一个 AtomicLong 中 CAS 更新。同一毫秒内序号用完，或时钟回拨时，
+ * 沿用上一个值继续递增（相当于借用下一毫秒），保证单调而不阻塞等待。
+ */
+public final class Snowflake {
+
+    // 2024-01-01T00:00:00Z
+    public static final long EPOCH = 1704067200000L;
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // Hibernate 实例化的 id 生成器拿不到 Spring bean，经由这里取得本节点的实例，由 IdConfig 设置
+    private static volatile Snowflake global;
+
+    private final long node;
+    // 高位为毫秒数，低 SEQUENCE_BITS 位为序号
+    private final AtomicLong state = new AtomicLong();
+
+    public Snowflake(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        this.node = node;
+    }
+
+    /**
+     * 本节点的实例。尚未配置时直接失败：若退回默认节点号，另起的生成器可能与配置的实例在同一毫秒内生成相同的 id
+     */
+    public static Snowflake global() {
+        Snowflake snowflake = global;
+        if (snowflake == null) {
+            throw new IllegalStateException("Snowflake id generator is not configured; IdConfig must be initialized before entities are persisted");
+        }
+        return snowflake;
+    }
+
+    static void setGlobal(Snowflake snowflake) {
+        global = snowflake;
+    }
+
+    public long nextId() {
+        while (true) {
+            long previous = state.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long next = now > previous >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : previous + 1;
+            if (state.compareAndSet(previous, next)) {
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                        | node << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public int node() {
+        return (int) node;
+    }
+}
@@ -0,0 +1,15 @@
+package top.colommar.chatapp.id;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+/**
+ * {@link SnowflakeId} 对应的 Hibernate 主键生成器
+ */
+public class SnowflakeIdGenerator implements IdentifierGenerator {
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return Snowflake.global().nextId();
+    }
+}
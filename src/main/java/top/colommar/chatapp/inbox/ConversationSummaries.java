@@ -0,0 +1,298 @@
+package top.colommar.chatapp.inbox;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import top.colommar.chatapp.model.Conversation;
+import top.colommar.chatapp.model.ConversationReadMarker;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.repository.ConversationReadMarkerRepository;
+import top.colommar.chatapp.repository.ConversationRepository;
+import top.colommar.chatapp.storage.ConversationKey;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按用户的会话摘要（收件箱）：每个会话的最后一条消息、时间与未读数
+ *
+ * 会话的消息总数与最后一条消息在全部参与者间共享，每个用户只记录已读到第几条，群聊消息因此只需更新一处而不必逐个用户累加。
+ * 会话在启动时全部载入内存，已读位置在用户登录时载入、下线时丢弃；变更只在内存中进行并标记为脏，由后台线程按 flushIntervalMs 批量写回数据库。
+ * 调用方负责只为已注册的用户记录消息，否则任意接收者都会产生新的会话行。
+ *
+ * 摘要只由启用后保存的消息累积而成，不从已有的消息回填：升级前的历史消息不出现在摘要中，也不计入未读。
+ */
+@Slf4j
+@Component
+public class ConversationSummaries {
+
+    // 摘要中最后一条消息的预览长度
+    private static final int PREVIEW_LENGTH = 100;
+
+    private final ConversationRepository conversationRepository;
+    private final ConversationReadMarkerRepository readMarkerRepository;
+
+    private final Map<String, ConversationState> conversations = new ConcurrentHashMap<>();
+    // 用户 -> 其参与的私聊会话
+    private final Map<String, Set<String>> privateConversationsByUser = new ConcurrentHashMap<>();
+    // 在线用户 -> (会话 -> 已读条数)，登录时载入，下线时丢弃
+    private final Map<String, Map<String, Long>> readMarkers = new ConcurrentHashMap<>();
+
+    private final Set<String> dirtyConversations = ConcurrentHashMap.newKeySet();
+    // 待写回的已读条数，写入成功后才移除，因此已丢弃缓存的用户重新载入时仍能看到尚未落库的值
+    private final Map<ConversationReadMarker.Key, Long> dirtyMarkers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    public ConversationSummaries(ConversationRepository conversationRepository,
+                                 ConversationReadMarkerRepository readMarkerRepository,
+                                 @Value("${chat.inbox.flush-interval-ms:1000}") long flushIntervalMs) {
+        this.conversationRepository = conversationRepository;
+        this.readMarkerRepository = readMarkerRepository;
+        for (Conversation conversation : conversationRepository.findAll()) {
+            ConversationState state = new ConversationState(conversation.getId(),
+                    conversation.getParticipantA(), conversation.getParticipantB());
+            state.messageCount = conversation.getMessageCount();
+            state.lastMessageId = conversation.getLastMessageId();
+            state.lastSender = conversation.getLastSender();
+            state.lastPreview = conversation.getLastPreview();
+            state.lastTimestamp = conversation.getLastTimestamp() == null ? 0 : conversation.getLastTimestamp().getTime();
+            register(state);
+        }
+        log.info("Loaded {} conversation summaries", conversations.size());
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "conversation-summary-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void register(ConversationState state) {
+        conversations.put(state.id, state);
+        if (state.participantA != null) {
+            privateConversationsByUser.computeIfAbsent(state.participantA, u -> ConcurrentHashMap.newKeySet()).add(state.id);
+            privateConversationsByUser.computeIfAbsent(state.participantB, u -> ConcurrentHashMap.newKeySet()).add(state.id);
+        }
+    }
+
+    /**
+     * 新用户注册：群聊中已有的消息不计入其未读
+     */
+    public void registered(String username) {
+        ConversationState group = conversations.get(ConversationKey.GROUP);
+        if (group != null) {
+            setReadCount(username, ConversationKey.GROUP, group.count());
+        }
+    }
+
+    /**
+     * 用户下线，丢弃其已读位置缓存；尚未写回的变更仍在待写队列中
+     */
+    public void loggedOut(String username) {
+        readMarkers.remove(username);
+    }
+
+    /**
+     * 消息保存后更新所属会话，发送者视为已读到这条消息。接收者须是已注册的用户
+     */
+    public void recorded(Message message) {
+        String id = ConversationKey.of(message.getSender(), message.getReceiver());
+        ConversationState state = conversations.get(id);
+        if (state == null) {
+            boolean group = ConversationKey.GROUP.equals(id);
+            ConversationState created = new ConversationState(id,
+                    group ? null : message.getSender(), group ? null : message.getReceiver());
+            state = conversations.putIfAbsent(id, created);
+            if (state == null) {
+                register(created);
+                state = created;
+            }
+        }
+        long count;
+        synchronized (state) {
+            count = ++state.messageCount;
+            state.lastMessageId = message.getId();
+            state.lastSender = message.getSender();
+            String content = message.getContent();
+            state.lastPreview = content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) : content;
+            state.lastTimestamp = message.getTimestamp().getTime();
+        }
+        dirtyConversations.add(id);
+        setReadCount(message.getSender(), id, count);
+    }
+
+    /**
+     * 已读回执：读到的消息不早于会话最后一条时清零未读
+     *
+     * @param peer      私聊对象，null 表示群聊
+     * @param timestamp 读到的最后一条消息的时间戳
+     */
+    public void markRead(String username, String peer, long timestamp) {
+        String id = ConversationKey.of(username, peer);
+        ConversationState state = conversations.get(id);
+        if (state == null) {
+            return;
+        }
+        long count;
+        synchronized (state) {
+            if (timestamp < state.lastTimestamp) {
+                return;
+            }
+            count = state.messageCount;
+        }
+        setReadCount(username, id, count);
+    }
+
+    /**
+     * 用户的全部会话摘要，最近有消息的在前
+     *
+     * @return 每项包含 receiver（私聊对象，群聊为 null）、lastSender、lastContent、lastTimestamp、lastMessageId、unread
+     */
+    public List<Map<String, Object>> summariesFor(String username) {
+        Map<String, Long> markers = markersOf(username);
+        List<ConversationState> states = new ArrayList<>();
+        ConversationState group = conversations.get(ConversationKey.GROUP);
+        if (group != null) {
+            states.add(group);
+        }
+        for (String id : privateConversationsByUser.getOrDefault(username, Set.of())) {
+            states.add(conversations.get(id));
+        }
+
+        List<Map<String, Object>> summaries = new ArrayList<>(states.size());
+        for (ConversationState state : states) {
+            Map<String, Object> summary = new HashMap<>();
+            long count;
+            synchronized (state) {
+                count = state.messageCount;
+                summary.put("lastSender", state.lastSender);
+                summary.put("lastContent", state.lastPreview);
+                summary.put("lastTimestamp", state.lastTimestamp);
+                summary.put("lastMessageId", state.lastMessageId == null ? null : String.valueOf(state.lastMessageId));
+            }
+            summary.put("receiver", state.peerOf(username));
+            summary.put("unread", Math.max(0, count - markers.getOrDefault(state.id, 0L)));
+            summaries.add(summary);
+        }
+        summaries.sort(Comparator.comparingLong((Map<String, Object> s) -> (Long) s.get("lastTimestamp")).reversed());
+        return summaries;
+    }
+
+    private Map<String, Long> markersOf(String username) {
+        return readMarkers.computeIfAbsent(username, u -> {
+            // 先取待写的值再读库：写回先提交再移除，两者之间的值总能在其中之一看到。已读条数只增不减，合并取较大者
+            Map<String, Long> markers = new ConcurrentHashMap<>();
+            dirtyMarkers.forEach((key, count) -> {
+                if (key.getUsername().equals(u)) {
+                    markers.put(key.getConversationId(), count);
+                }
+            });
+            for (ConversationReadMarker marker : readMarkerRepository.findByUsername(u)) {
+                markers.merge(marker.getConversationId(), marker.getReadCount(), Math::max);
+            }
+            return markers;
+        });
+    }
+
+    private void setReadCount(String username, String conversationId, long count) {
+        // 不在线的用户（如刚注册）不建缓存，只进待写队列
+        Map<String, Long> markers = readMarkers.get(username);
+        Long previous = markers == null ? null : markers.put(conversationId, count);
+        if (previous == null || previous != count) {
+            dirtyMarkers.put(new ConversationReadMarker.Key(username, conversationId), count);
+        }
+    }
+
+    /**
+     * 把脏数据批量写回数据库，失败的留到下一轮重试
+     */
+    public void flush() {
+        List<Conversation> conversationBatch = new ArrayList<>();
+        for (Iterator<String> it = dirtyConversations.iterator(); it.hasNext(); ) {
+            String id = it.next();
+            it.remove();
+            conversationBatch.add(conversations.get(id).snapshot());
+        }
+        List<ConversationReadMarker> markerBatch = new ArrayList<>();
+        dirtyMarkers.forEach((key, count) ->
+                markerBatch.add(new ConversationReadMarker(key.getUsername(), key.getConversationId(), count)));
+        try {
+            if (!conversationBatch.isEmpty()) {
+                conversationRepository.saveAll(conversationBatch);
+            }
+        } catch (RuntimeException e) {
+            conversationBatch.forEach(c -> dirtyConversations.add(c.getId()));
+            throw e;
+        }
+        if (!markerBatch.isEmpty()) {
+            readMarkerRepository.saveAll(markerBatch);
+            // 只移除已写入的值，期间又被改过的留到下一轮
+            markerBatch.forEach(m -> dirtyMarkers.remove(
+                    new ConversationReadMarker.Key(m.getUsername(), m.getConversationId()), m.getReadCount()));
+        }
+        if (log.isDebugEnabled() && (!conversationBatch.isEmpty() || !markerBatch.isEmpty())) {
+            log.debug("Flushed {} conversations and {} read markers", conversationBatch.size(), markerBatch.size());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to persist conversation summaries", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flusher.shutdownNow();
+        flushQuietly();
+    }
+
+    private static final class ConversationState {
+
+        final String id;
+        final String participantA;
+        final String participantB;
+        long messageCount;
+        Long lastMessageId;
+        String lastSender;
+        String lastPreview;
+        long lastTimestamp;
+
+        ConversationState(String id, String participantA, String participantB) {
+            this.id = id;
+            this.participantA = participantA;
+            this.participantB = participantB;
+        }
+
+        synchronized long count() {
+            return messageCount;
+        }
+
+        String peerOf(String username) {
+            if (participantA == null) {
+                return null;
+            }
+            return participantA.equals(username) ? participantB : participantA;
+        }
+
+        synchronized Conversation snapshot() {
+            Conversation conversation = new Conversation();
+            conversation.setId(id);
+            conversation.setParticipantA(participantA);
+            conversation.setParticipantB(participantB);
+            conversation.setMessageCount(messageCount);
+            conversation.setLastMessageId(lastMessageId);
+            conversation.setLastSender(lastSender);
+            conversation.setLastPreview(lastPreview);
+            conversation.setLastTimestamp(new Date(lastTimestamp));
+            return conversation;
+        }
+    }
+}
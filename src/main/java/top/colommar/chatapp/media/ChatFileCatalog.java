@@ -0,0 +1,47 @@
+package top.colommar.chatapp.media;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import top.colommar.chatapp.cache.LruCache;
+import top.colommar.chatapp.cache.LruCacheMetrics;
+import top.colommar.chatapp.model.ChatFile;
+import top.colommar.chatapp.repository.ChatFileRepository;
+
+/**
+ * ChatFile 元数据的读穿/写穿缓存，下载和缩略图请求不必每次查库
+ *
+ * 文件记录上传后只有缩略图路径会变，且都经由 save 更新，因此缓存不会过期
+ */
+@Service
+public class ChatFileCatalog {
+
+    private final ChatFileRepository chatFileRepository;
+    private final LruCache<Long, ChatFile> cache;
+
+    public ChatFileCatalog(ChatFileRepository chatFileRepository, MeterRegistry registry,
+                           @Value("${chat.files.metadata-cache-entries:10000}") int maxEntries) {
+        this.chatFileRepository = chatFileRepository;
+        this.cache = LruCacheMetrics.monitor(registry, new LruCache<>(maxEntries, file -> 1), "chatFileMetadata");
+    }
+
+    /**
+     * 按 id 查找文件记录，不存在时返回 null
+     */
+    public ChatFile find(long id) {
+        ChatFile chatFile = cache.get(id);
+        if (chatFile == null) {
+            chatFile = chatFileRepository.findById(id).orElse(null);
+            if (chatFile != null) {
+                cache.put(id, chatFile);
+            }
+        }
+        return chatFile;
+    }
+
+    public ChatFile save(ChatFile chatFile) {
+        ChatFile saved = chatFileRepository.save(chatFile);
+        cache.put(saved.getId(), saved);
+        return saved;
+    }
+}
@@ -0,0 +1,53 @@
+package top.colommar.chatapp.media;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import top.colommar.chatapp.cache.ByteLruCache;
+import top.colommar.chatapp.cache.LruCache;
+import top.colommar.chatapp.cache.LruCacheMetrics;
+
+/**
+ * 小文件内容的内存缓存：群里反复被下载的图片、文档直接从内存返回
+ *
+ * 只缓存不超过 maxFileBytes 的文件，且同一文件第二次被下载时才放入缓存，只下载一次的文件不会挤掉热点文件
+ */
+@Component
+public class HotFileCache {
+
+    private final long maxFileBytes;
+    private final ByteLruCache<Long> contents;
+    // 被下载过一次的文件 id，只按条数限制
+    private final LruCache<Long, Boolean> seenOnce;
+
+    public HotFileCache(MeterRegistry registry,
+                        @Value("${chat.files.cache-bytes:67108864}") long cacheBytes,
+                        @Value("${chat.files.cache-max-file-bytes:262144}") long maxFileBytes) {
+        this.maxFileBytes = maxFileBytes;
+        this.contents = LruCacheMetrics.monitor(registry, new ByteLruCache<>(cacheBytes), "hotFiles");
+        this.seenOnce = new LruCache<>(10_000, seen -> 1);
+    }
+
+    public byte[] get(long id) {
+        return contents.get(id);
+    }
+
+    /**
+     * 未命中后判断是否值得把这个文件读进内存
+     */
+    public boolean admit(long id, long size) {
+        if (size > maxFileBytes) {
+            return false;
+        }
+        if (seenOnce.get(id) != null) {
+            seenOnce.remove(id);
+            return true;
+        }
+        seenOnce.put(id, Boolean.TRUE);
+        return false;
+    }
+
+    public void put(long id, byte[] content) {
+        contents.put(id, content);
+    }
+}
@@ -0,0 +1,169 @@
+package top.colommar.chatapp.media;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import top.colommar.chatapp.cache.ByteLruCache;
+import top.colommar.chatapp.cache.LruCacheMetrics;
+import top.colommar.chatapp.model.ChatFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 上传图片的缩略图：上传完成后提交到有界线程池，用 JDK ImageIO 生成缩略图并保存在原文件旁边，
+ * 生成后以副本回写 ChatFile.thumbnailPath 并替换元数据缓存项。队列满时直接放弃该任务，原图仍可下载。
+ * 最近访问的缩略图保存在按字节限制的 LRU 缓存中。
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    static final String SUFFIX = ".thumb";
+
+    private final ChatFileCatalog chatFileCatalog;
+    private final int maxSize;
+    private final ThreadPoolExecutor workers;
+    private final ByteLruCache<Long> cache;
+
+    public ThumbnailService(ChatFileCatalog chatFileCatalog, MeterRegistry registry,
+                            @Value("${chat.thumbnail.max-size:320}") int maxSize,
+                            @Value("${chat.thumbnail.workers:2}") int workers,
+                            @Value("${chat.thumbnail.queue-capacity:64}") int queueCapacity,
+                            @Value("${chat.thumbnail.cache-bytes:33554432}") long cacheBytes) {
+        this.chatFileCatalog = chatFileCatalog;
+        this.maxSize = maxSize;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "thumbnail-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.cache = LruCacheMetrics.monitor(registry, new ByteLruCache<>(cacheBytes), "thumbnails");
+    }
+
+    /**
+     * 异步生成缩略图，非图片文件直接忽略
+     *
+     * @param onReady 缩略图生成并保存后回调，用于通知客户端
+     */
+    public void submit(ChatFile chatFile, String contentType, Consumer<ChatFile> onReady) {
+        if (contentType == null || !contentType.startsWith("image/")) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    Path thumbnail = generate(Paths.get(chatFile.getFilePath()), maxSize);
+                    if (thumbnail == null) {
+                        return;
+                    }
+                    // 传入的对象同时在元数据缓存中被请求线程读取，保存一份副本，由 save 替换缓存项
+                    ChatFile updated = new ChatFile(chatFile.getId(), chatFile.getFileName(), chatFile.getFilePath(),
+                            chatFile.getSender(), chatFile.getReceiver(), chatFile.getTimestamp(),
+                            thumbnail.toString().replace('\\', '/'));
+                    onReady.accept(chatFileCatalog.save(updated));
+                } catch (Exception e) {
+                    log.warn("生成缩略图失败: {}", chatFile.getFilePath(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("缩略图队列已满，跳过 {}", chatFile.getFilePath());
+        }
+    }
+
+    /**
+     * 读取缩略图内容，优先命中缓存；没有缩略图时返回 null
+     */
+    public byte[] load(ChatFile chatFile) throws IOException {
+        byte[] bytes = cache.get(chatFile.getId());
+        if (bytes != null) {
+            return bytes;
+        }
+        if (chatFile.getThumbnailPath() == null) {
+            return null;
+        }
+        Path path = Paths.get(chatFile.getThumbnailPath());
+        if (!Files.exists(path)) {
+            return null;
+        }
+        bytes = Files.readAllBytes(path);
+        cache.put(chatFile.getId(), bytes);
+        return bytes;
+    }
+
+    /**
+     * 生成不超过 maxSize×maxSize 的缩略图，写到 source 同目录下的 &lt;原文件名&gt;.thumb.jpg（带透明通道时为 .png）
+     *
+     * 解码时按比例跳行跳列采样，大图不必整张解码到内存
+     *
+     * @return 缩略图路径，source 不是可识别的图片时返回 null
+     */
+    static Path generate(Path source, int maxSize) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                // 采样后仍保留约两倍目标尺寸，再平滑缩放，避免锯齿
+                int step = Math.max(1, longest / (maxSize * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double scale = Math.min(1.0, (double) maxSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        boolean alpha = image.getColorModel().hasAlpha();
+
+        BufferedImage thumbnail = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        String format = alpha ? "png" : "jpg";
+        Path target = source.resolveSibling(source.getFileName() + SUFFIX + "." + format);
+        if (!ImageIO.write(thumbnail, format, target.toFile())) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        return target;
+    }
+
+    @PreDestroy
+    public void close() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,154 @@
+package top.colommar.chatapp.metrics;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.netty4.NettyAllocatorMetrics;
+import io.micrometer.core.instrument.binder.netty4.NettyEventExecutorMetrics;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.EventLoopGroup;
+import org.springframework.stereotype.Component;
+import top.colommar.chatapp.service.ChatServerHandler;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天服务器的 Micrometer 指标，经由 Actuator 的 /actuator/prometheus 导出
+ *
+ * 用户与文件元数据的数据库调用耗时由 Actuator 自动记录在 spring.data.repository.invocations 中；
+ * 消息存储默认是追加写日志而非 Spring Data 仓库，其调用耗时单独记录在 chat.persistence 中
+ */
+@Component
+public class ChatMetrics {
+
+    private static final Set<String> KNOWN_TYPES = Set.of("login", "register", "message", "typing", "read", "history");
+
+    private final MeterRegistry registry;
+
+    // 所有已建立的 WebSocket 连接，用于统计待发送字节数
+    private final Set<Channel> channels = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Counter> receivedCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> handlingTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> persistenceTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> fanoutSummaries = new ConcurrentHashMap<>();
+    private final Counter coalescedEvents;
+
+    public ChatMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        Gauge.builder("chat.connections", channels, Set::size)
+                .description("当前打开的连接数")
+                .tag("state", "open")
+                .register(registry);
+        Gauge.builder("chat.connections", ChatServerHandler::onlineUserCount)
+                .description("当前已登录的连接数")
+                .tag("state", "authenticated")
+                .register(registry);
+        Gauge.builder("chat.outbound.pending", this, ChatMetrics::pendingOutboundBytes)
+                .description("所有连接出站缓冲区中尚未写出的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+
+        coalescedEvents = Counter.builder("chat.events.coalesced")
+                .description("合并窗口内被更新事件覆盖、未发出的瞬时事件数")
+                .register(registry);
+
+        new NettyAllocatorMetrics(PooledByteBufAllocator.DEFAULT).bindTo(registry);
+    }
+
+    /**
+     * 绑定 Netty 事件循环，导出各 EventLoop 的待处理任务数
+     */
+    public void bindEventLoops(EventLoopGroup... groups) {
+        for (EventLoopGroup group : groups) {
+            new NettyEventExecutorMetrics(group).bindTo(registry);
+        }
+    }
+
+    public void connectionOpened(Channel channel) {
+        channels.add(channel);
+    }
+
+    public void connectionClosed(Channel channel) {
+        channels.remove(channel);
+    }
+
+    /**
+     * 记录一条收到的消息，未知类型统一归为 unsupported，避免标签基数失控
+     */
+    public void messageReceived(String type) {
+        String tag = normalizeType(type);
+        receivedCounters.computeIfAbsent(tag, t -> Counter.builder("chat.messages.received")
+                .description("按类型统计的入站消息数")
+                .tag("type", t)
+                .register(registry)).increment();
+    }
+
+    public long startHandling() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录一条入站消息从解码到分发完成的耗时
+     */
+    public void stopHandling(long startNanos, String type) {
+        handlingTimers.computeIfAbsent(normalizeType(type), t -> Timer.builder("chat.message.handling")
+                .description("入站消息的处理耗时")
+                .tag("type", t)
+                .publishPercentileHistogram()
+                .register(registry)).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次消息存储调用的耗时
+     *
+     * @param operation 调用类别：save / history / visible
+     */
+    public void persistence(String operation, long startNanos) {
+        persistenceTimers.computeIfAbsent(operation, o -> Timer.builder("chat.persistence")
+                .description("消息存储的调用耗时")
+                .tag("operation", o)
+                .publishPercentileHistogram()
+                .register(registry)).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次扇出的接收者数量
+     *
+     * @param kind       扇出类别：private / group / presence / file / ephemeral
+     * @param recipients 实际写出的连接数
+     */
+    public void fanout(String kind, int recipients) {
+        fanoutSummaries.computeIfAbsent(kind, k -> DistributionSummary.builder("chat.fanout.recipients")
+                .description("单次扇出写出的连接数")
+                .tag("kind", k)
+                .publishPercentileHistogram()
+                .register(registry)).record(recipients);
+    }
+
+    public void eventCoalesced() {
+        coalescedEvents.increment();
+    }
+
+    private double pendingOutboundBytes() {
+        long total = 0;
+        for (Channel channel : channels) {
+            ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+            if (buffer != null) {
+                total += buffer.totalPendingWriteBytes();
+            }
+        }
+        return total;
+    }
+
+    private static String normalizeType(String type) {
+        if (type == null) {
+            return "invalid";
+        }
+        return KNOWN_TYPES.contains(type) ? type : "unsupported";
+    }
+}
@@ -1,9 +1,12 @@
 package top.colommar.chatapp.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import top.colommar.chatapp.id.SnowflakeId;
 
 
 /**
@@ -16,7 +19,8 @@ import lombok.NoArgsConstructor;
 @Table(name = "chatfile")
 public class ChatFile {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
+    @JsonSerialize(using = ToStringSerializer.class)
     private long id;
 
     @Column(nullable = false)
@@ -30,4 +34,13 @@ public class ChatFile {
     private String receiver;
 
     private long timestamp; // 添加时间戳字段，便于排序和展示
+
+    private String thumbnailPath; // 图片的缩略图，异步生成，非图片或尚未生成时为 null
+
+    /**
+     * 缩略图下载地址，随 fileList 下发给客户端
+     */
+    public String getThumbnailUrl() {
+        return thumbnailPath == null ? null : "/api/chatfiles/thumbnail/" + id;
+    }
 }
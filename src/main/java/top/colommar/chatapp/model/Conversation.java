@@ -0,0 +1,42 @@
+package top.colommar.chatapp.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 会话摘要：一个会话（群聊或两人私聊）的最后一条消息与消息总数，各参与者的未读数由 {@link ConversationReadMarker} 算出
+ */
+@Data
+@Entity
+public class Conversation {
+
+    // 会话键，见 ConversationKey；群聊为空串
+    @Id
+    @Column(length = 512)
+    private String id;
+
+    // 私聊的两个参与者，群聊均为 null
+    @Column
+    private String participantA;
+
+    @Column
+    private String participantB;
+
+    @Column(nullable = false)
+    private long messageCount;
+
+    @Column
+    private Long lastMessageId;
+
+    @Column
+    private String lastSender;
+
+    @Column
+    private String lastPreview;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column
+    private Date lastTimestamp;
+}
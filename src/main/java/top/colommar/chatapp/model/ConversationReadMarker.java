@@ -0,0 +1,37 @@
+package top.colommar.chatapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 用户在某个会话中已读到第几条消息，未读数 = 会话消息总数 - readCount
+ */
+@Data
+@Entity
+@IdClass(ConversationReadMarker.Key.class)
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationReadMarker {
+
+    @Id
+    private String username;
+
+    @Id
+    @Column(length = 512)
+    private String conversationId;
+
+    @Column(nullable = false)
+    private long readCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String username;
+        private String conversationId;
+    }
+}
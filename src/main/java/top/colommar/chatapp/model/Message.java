@@ -1,7 +1,10 @@
 package top.colommar.chatapp.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import jakarta.persistence.*;
 import lombok.Data;
+import top.colommar.chatapp.id.SnowflakeId;
 
 import java.util.Date;
 
@@ -10,7 +13,8 @@ import java.util.Date;
 @Entity
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
+    @JsonSerialize(using = ToStringSerializer.class) // 超过 2^53，以字符串下发，避免 JavaScript 丢失精度
     private Long id;
 
     @Column(nullable=false)
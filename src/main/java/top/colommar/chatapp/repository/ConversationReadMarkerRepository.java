@@ -0,0 +1,12 @@
+package top.colommar.chatapp.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import top.colommar.chatapp.model.ConversationReadMarker;
+
+import java.util.List;
+
+public interface ConversationReadMarkerRepository
+        extends JpaRepository<ConversationReadMarker, ConversationReadMarker.Key> {
+
+    List<ConversationReadMarker> findByUsername(String username);
+}
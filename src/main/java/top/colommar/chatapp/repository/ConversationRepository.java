@@ -0,0 +1,7 @@
+package top.colommar.chatapp.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import top.colommar.chatapp.model.Conversation;
+
+public interface ConversationRepository extends JpaRepository<Conversation, String> {
+}
@@ -1,13 +1,31 @@
 package top.colommar.chatapp.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import top.colommar.chatapp.model.Message;
 
 import java.util.List;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-    List<Message> findTop50ByOrderByTimestampAsc();
+    List<Message> findByReceiverIsNullOrSenderOrReceiverOrderByTimestampAsc(String sender, String receiver);
 
-    List<Message> findAllByOrderByTimestampAsc();
+    @Query("select m from Message m where (m.receiver is null or m.receiver = '') and m.id < :before order by m.id desc")
+    List<Message> findGroupBefore(@Param("before") long before, Pageable pageable);
+
+    @Query("select m from Message m where ((m.sender = :user and m.receiver = :peer) or (m.sender = :peer and m.receiver = :user))"
+            + " and m.id < :before order by m.id desc")
+    List<Message> findPrivateBefore(@Param("user") String user, @Param("peer") String peer,
+                                    @Param("before") long before, Pageable pageable);
+
+    List<Message> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Message m where m.id <= :id")
+    int deleteThrough(@Param("id") long id);
 }
@@ -3,6 +3,6 @@ package top.colommar.chatapp.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import top.colommar.chatapp.model.User;
 
-public interface UserRepository extends JpaRepository<User, Integer> {
+public interface UserRepository extends JpaRepository<User, Long> {
     User findByUsername(String username);
 }
@@ -1,54 +1,226 @@
 package top.colommar.chatapp.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.CommandLineRunner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
 
 
+import top.colommar.chatapp.admission.AdmissionController;
+import top.colommar.chatapp.event.EphemeralEventRelay;
+import top.colommar.chatapp.inbox.ConversationSummaries;
+import top.colommar.chatapp.metrics.ChatMetrics;
 import top.colommar.chatapp.repository.ChatFileRepository;
-import top.colommar.chatapp.repository.MessageRepository;
 import top.colommar.chatapp.repository.UserRepository;
+import top.colommar.chatapp.storage.MessageStore;
+import top.colommar.chatapp.trace.MessageTracer;
 
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Netty WebSocket 服务器，测试等场景可通过 chat.server.enabled=false 关闭
+ *
+ * 作为 SmartLifecycle 由 Spring 管理：启动时同步绑定端口，绑定失败则启动失败，绑定成功后健康检查（readiness 组）才报告 UP；
+ * 关闭时先停止接受新连接，通知在线客户端稍后重连，待已排队的写出完成后关闭连接，
+ * 在截止时间内等待事件循环处理完手头的消息并刷盘，最后释放事件循环。
+ */
+@Slf4j
 @Component
-public class ChatServer implements CommandLineRunner {
+@ConditionalOnProperty(prefix = "chat.server", name = "enabled", matchIfMissing = true)
+public class ChatServer implements SmartLifecycle, HealthIndicator {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${chat.server.port:8081}")
+    private int port;
 
-    private final int port = 8081;
+    @Value("${chat.server.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
 
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
-    private MessageRepository messageRepository;
+    private MessageStore messageStore;
 
     @Autowired
     private ChatFileRepository chatfileRepository;
 
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private AdmissionController admission;
+
+    @Autowired
+    private EphemeralEventRelay eventRelay;
+
+    @Autowired
+    private MessageTracer tracer;
+
+    @Autowired
+    private ConversationSummaries summaries;
+
+    private final ChannelGroup allChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private volatile Channel serverChannel;
+    private volatile boolean running;
+    private volatile boolean draining;
+
+    @Override
+    public void start() {
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup();
+        chatMetrics.bindEventLoops(workerGroup);
+        admission.monitor(workerGroup);
+
+        ServerBootstrap b = new ServerBootstrap();
+        b.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChatServerInitializer(userRepository, messageStore, chatfileRepository, chatMetrics,
+                        admission, eventRelay, tracer, summaries, allChannels));
+
+        ChannelFuture f = b.bind(port).awaitUninterruptibly();
+        if (!f.isSuccess()) {
+            workerGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+            bossGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+            throw new IllegalStateException("服务器绑定端口 " + port + " 失败", f.cause());
+        }
+        serverChannel = f.channel();
+        running = true;
+        log.info("服务器已启动，监听端口：{}", boundPort());
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        // 排空可能耗时数秒，放到独立线程，完成后通知 Spring
+        Thread shutdown = new Thread(() -> {
+            try {
+                drain();
+            } finally {
+                running = false;
+                callback.run();
+            }
+        }, "chat-server-shutdown");
+        shutdown.start();
+    }
+
     @Override
-    public void run(String... args) throws Exception {
-        start();
+    public void stop() {
+        drain();
+        running = false;
     }
 
-    public void start() throws Exception {
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+    private void drain() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMs);
+        draining = true;
+
+        // 1. 停止接受新连接
+        Channel server = serverChannel;
+        if (server != null) {
+            server.close().awaitUninterruptibly(remainingMillis(deadline));
+        }
+
+        // 2. 通知在线用户重连，关闭帧排在已有写出之后，写完即断开
+        List<ChannelFuture> closing = new ArrayList<>();
+        for (Channel channel : ChatServerHandler.onlineChannels()) {
+            if (channel.isActive()) {
+                channel.write(new TextWebSocketFrame(reconnectHint()));
+                closing.add(channel.writeAndFlush(new CloseWebSocketFrame(1001, "server shutting down"))
+                        .addListener(ChannelFutureListener.CLOSE));
+            }
+        }
+        log.info("服务器正在关闭，已通知 {} 个在线连接重连", closing.size());
+        for (ChannelFuture future : closing) {
+            future.awaitUninterruptibly(remainingMillis(deadline));
+        }
+
+        // 3. 截止时间到仍未断开的连接（含未登录连接）强制关闭
+        allChannels.close().awaitUninterruptibly(remainingMillis(deadline));
+
+        // 4. 等事件循环处理完已入队的任务后释放，再把消息存储刷盘
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully(0, remainingMillis(deadline), TimeUnit.MILLISECONDS)
+                    .awaitUninterruptibly(remainingMillis(deadline));
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, remainingMillis(deadline), TimeUnit.MILLISECONDS)
+                    .awaitUninterruptibly(remainingMillis(deadline));
+        }
+        messageStore.flush();
+        log.info("服务器已关闭");
+    }
+
+    private static long remainingMillis(long deadlineNanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * 重连提示，带随机退避，避免所有客户端同时重连
+     */
+    private static String reconnectHint() {
+        Map<String, Object> hint = new HashMap<>();
+        hint.put("type", "reconnect");
+        hint.put("message", "服务器正在重启，请稍后重连");
+        hint.put("retryAfterMs", ThreadLocalRandom.current().nextLong(1000, 5000));
         try {
-            ServerBootstrap b = new ServerBootstrap();
-            b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
-                    .childHandler(new ChatServerInitializer(userRepository, messageRepository, chatfileRepository));
+            return objectMapper.writeValueAsString(hint);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            ChannelFuture f = b.bind(port).sync();
-            System.out.println("服务器已启动，监听端口：" + port);
-            f.channel().closeFuture().sync();
-        } finally {
-            workerGroup.shutdownGracefully();
-            bossGroup.shutdownGracefully();
+    /**
+     * 实际监听的端口，配置为 0 时由系统分配
+     */
+    public int boundPort() {
+        Channel server = serverChannel;
+        return server == null ? port : ((InetSocketAddress) server.localAddress()).getPort();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public Health health() {
+        if (draining) {
+            return Health.outOfService().withDetail("port", port).build();
         }
+        Channel server = serverChannel;
+        if (server != null && server.isActive()) {
+            return Health.up()
+                    .withDetail("port", boundPort())
+                    .withDetail("connections", allChannels.size())
+                    .build();
+        }
+        return Health.down().withDetail("port", port).build();
     }
 }
-
@@ -6,12 +6,22 @@ import io.netty.channel.*;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import top.colommar.chatapp.admission.AdmissionController;
+import top.colommar.chatapp.admission.TokenBucket;
+import top.colommar.chatapp.event.EphemeralEvent;
+import top.colommar.chatapp.event.EphemeralEventRelay;
+import top.colommar.chatapp.inbox.ConversationSummaries;
+import top.colommar.chatapp.event.EventCoalescer;
+import top.colommar.chatapp.metrics.ChatMetrics;
 import top.colommar.chatapp.model.ChatFile;
 import top.colommar.chatapp.model.Message;
 import top.colommar.chatapp.model.User;
 import top.colommar.chatapp.repository.ChatFileRepository;
-import top.colommar.chatapp.repository.MessageRepository;
 import top.colommar.chatapp.repository.UserRepository;
+import top.colommar.chatapp.storage.ConversationKey;
+import top.colommar.chatapp.storage.MessageStore;
+import top.colommar.chatapp.trace.MessageTrace;
+import top.colommar.chatapp.trace.MessageTracer;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -32,14 +42,39 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    // 瞬时事件类型：不落库，过载或超限时静默丢弃
+    private static final Set<String> EPHEMERAL_TYPES = Set.of("typing", "read");
+
+    // 分页历史每页的默认与最大条数
+    private static final int DEFAULT_HISTORY_PAGE = 50;
+    private static final int MAX_HISTORY_PAGE = 200;
+
     private final UserRepository userRepository;
-    private final MessageRepository messageRepository;
+    private final MessageStore messageStore;
     private final ChatFileRepository chatFileRepository;
+    private final ChatMetrics chatMetrics;
+    private final AdmissionController admission;
+    private final EphemeralEventRelay eventRelay;
+    private final MessageTracer tracer;
+    private final ConversationSummaries summaries;
+
+    // 本连接按消息类型的令牌桶，只在本连接的事件循环线程上访问
+    private final Map<String, TokenBucket> rateLimits = new HashMap<>();
+
+    // 本连接发出的瞬时事件合并器，首次使用时创建
+    private EventCoalescer<EphemeralEvent> ephemeralEvents;
 
-    public ChatServerHandler(UserRepository userRepository, MessageRepository messageRepository, ChatFileRepository chatfileRepository) {
+    public ChatServerHandler(UserRepository userRepository, MessageStore messageStore, ChatFileRepository chatfileRepository,
+                             ChatMetrics chatMetrics, AdmissionController admission, EphemeralEventRelay eventRelay,
+                             MessageTracer tracer, ConversationSummaries summaries) {
         this.userRepository = userRepository;
-        this.messageRepository = messageRepository;
+        this.messageStore = messageStore;
         this.chatFileRepository = chatfileRepository;
+        this.chatMetrics = chatMetrics;
+        this.admission = admission;
+        this.eventRelay = eventRelay;
+        this.tracer = tracer;
+        this.summaries = summaries;
         initializeUserStatus();
         log.info("ChatServerHandler created...");
     }
@@ -60,8 +95,44 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
 //        log.info("Initialized userStatus with all users as offline: {}", userStatus);
     }
 
+    /**
+     * 当前已登录的用户数
+     */
+    public static int onlineUserCount() {
+        return userChannels.size();
+    }
+
+    /**
+     * 所有已登录用户的连接
+     */
+    public static Collection<Channel> onlineChannels() {
+        return userChannels.values();
+    }
+
+    /**
+     * 用户当前的连接，不在线时返回 null
+     */
+    public static Channel channelOf(String username) {
+        return userChannels.get(username);
+    }
+
+    /**
+     * 连接对应的已登录用户名，未登录时返回 null
+     */
+    public static String usernameOf(Channel channel) {
+        return channelUsers.get(channel.id());
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        chatMetrics.connectionOpened(ctx.channel());
+        super.handlerAdded(ctx);
+    }
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) throws Exception {
+        long start = chatMetrics.startHandling();
+        MessageTrace trace = tracer.start(frame.content().readableBytes());
         String json = frame.text();
         Map<String, Object> data;
 
@@ -70,21 +141,60 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
         } catch (Exception e) {
             log.error("Invalid JSON format: {}", json);
             sendError(ctx, "Invalid message format");
+            chatMetrics.messageReceived(null);
+            tracer.decoded(trace, null, null).finish();
             return;
         }
 
         String type = (String) data.get("type");
-        log.info("Received message of type: {}", type);
+        log.debug("Received message of type: {}", type);
+        chatMetrics.messageReceived(type);
+        trace = tracer.decoded(trace, type, data.get("traceId"));
+
+        if (!admit(ctx, type)) {
+            trace.finish();
+            chatMetrics.stopHandling(start, type);
+            return;
+        }
 
         if ("login".equals(type)) {
             handleLogin(ctx, data);
         } else if ("register".equals(type)) {
             handleRegister(ctx, data);
         } else if ("message".equals(type)) {
-            handleMessage(ctx, data);
+            handleMessage(ctx, data, trace);
+        } else if ("history".equals(type)) {
+            handleHistory(ctx, data);
+        } else if (EPHEMERAL_TYPES.contains(type)) {
+            handleEphemeral(ctx, type, data);
         } else {
             sendError(ctx, "Unsupported message type: " + type);
         }
+        trace.finish();
+        chatMetrics.stopHandling(start, type);
+    }
+
+    /**
+     * 过载或超出本连接限速时拒绝该消息，并告知客户端原因
+     */
+    private boolean admit(ChannelHandlerContext ctx, String type) {
+        boolean ephemeral = EPHEMERAL_TYPES.contains(type);
+        if (admission.isOverloaded()) {
+            admission.rejected("busy");
+            if (!ephemeral) {
+                sendError(ctx, "busy", "服务器繁忙，请稍后重试");
+            }
+            return false;
+        }
+        TokenBucket bucket = type == null ? null : rateLimits.computeIfAbsent(type, admission::newBucket);
+        if (bucket != null && !bucket.tryAcquire()) {
+            admission.rejected("rate_limited");
+            if (!ephemeral) {
+                sendError(ctx, "rate_limited", "发送过于频繁，请稍后再试");
+            }
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -110,12 +220,14 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
         }
 
         TextWebSocketFrame messageFrame = new TextWebSocketFrame(messageJson);
+        int recipients = 0;
 
         // 发送给发送者自己
         Channel senderChannel = userChannels.get(savedChatFile.getSender());
         if (senderChannel != null && senderChannel.isActive()) {
             senderChannel.writeAndFlush(messageFrame.copy());
-            log.info("文件从 {} 发送给自己", savedChatFile.getSender());
+            recipients++;
+            log.debug("文件从 {} 发送给自己", savedChatFile.getSender());
         }
 
         if (!savedChatFile.getReceiver().equals("null")&& !savedChatFile.getReceiver().isEmpty()) {
@@ -123,7 +235,8 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
             Channel receiverChannel = userChannels.get(savedChatFile.getReceiver());
             if (receiverChannel != null && receiverChannel.isActive()) {
                 receiverChannel.writeAndFlush(messageFrame.copy());
-                log.info("文件从 {} 发送给 {}", savedChatFile.getSender(), savedChatFile.getReceiver());
+                recipients++;
+                log.debug("文件从 {} 发送给 {}", savedChatFile.getSender(), savedChatFile.getReceiver());
             } else {
                 log.warn("用户 {} 不在线，文件未发送", savedChatFile.getReceiver());
             }
@@ -135,11 +248,57 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
                 // 排除发送者自己
                 if (!user.equals(savedChatFile.getSender()) && channel.isActive()) {
                     channel.writeAndFlush(messageFrame.copy());
-                    log.info("群聊文件从 {} 发送给 {}", savedChatFile.getSender(), user);
+                    recipients++;
+                    log.debug("群聊文件从 {} 发送给 {}", savedChatFile.getSender(), user);
                 }
             }
             log.info("群聊文件从 {} 广播给所有在线用户", savedChatFile.getSender());
         }
+        chatMetrics.fanout("file", recipients);
+    }
+
+    /**
+     * 缩略图生成后只推送一帧增量，客户端据此为文件列表中对应的文件换上缩略图：
+     * 私聊文件发给在线的收发双方，群聊文件发给所有在线用户，不重新查询和推送整个文件列表
+     */
+    public void broadcastThumbnail(ChatFile chatFile) {
+        Map<String, Object> thumbnailMessage = new HashMap<>();
+        thumbnailMessage.put("type", "thumbnail");
+        thumbnailMessage.put("id", String.valueOf(chatFile.getId()));
+        thumbnailMessage.put("thumbnailUrl", chatFile.getThumbnailUrl());
+
+        String messageJson;
+        try {
+            messageJson = objectMapper.writeValueAsString(thumbnailMessage);
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing thumbnail message", e);
+            return;
+        }
+
+        TextWebSocketFrame frame = new TextWebSocketFrame(messageJson);
+        Collection<Channel> channels;
+        String receiver = chatFile.getReceiver();
+        if (receiver == null || receiver.isEmpty() || receiver.equals("null")) {
+            channels = userChannels.values();
+        } else {
+            channels = new ArrayList<>(2);
+            Channel senderChannel = userChannels.get(chatFile.getSender());
+            Channel receiverChannel = userChannels.get(receiver);
+            if (senderChannel != null) {
+                channels.add(senderChannel);
+            }
+            if (receiverChannel != null && receiverChannel != senderChannel) {
+                channels.add(receiverChannel);
+            }
+        }
+        int recipients = 0;
+        for (Channel channel : channels) {
+            if (channel.isActive()) {
+                channel.writeAndFlush(frame.copy());
+                recipients++;
+            }
+        }
+        chatMetrics.fanout("file", recipients);
     }
 
 
@@ -150,7 +309,9 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
      */
     public void broadcastFileList(String username) {
         List<ChatFile> allFiles = chatFileRepository.findAll();
-        log.info("All files in database: {}", allFiles);
+        if (log.isDebugEnabled()) {
+            log.debug("All files in database: {}", allFiles);
+        }
         Map<String, Object> fileListMessage = new HashMap<>();
         List<ChatFile> userFiles = new ArrayList<>();  // 用于存储与用户相关的文件
 
@@ -197,7 +358,6 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
     private void handleLogin(ChannelHandlerContext ctx, Map<String, Object> data) {
         String username = (String) data.get("username");
         String password = (String) data.get("password");
-        log.warn(userStatus.toString());
         if (username == null || password == null) {
             sendLoginResponse(ctx, "failure", "用户名和密码不能为空");
             return;
@@ -213,15 +373,20 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
             userStatus.put(username, "online"); // 设置为在线
 
             sendLoginResponse(ctx, "success", null);
+            sendConversations(ctx, username);
 
-            log.warn(userStatus.toString());
+            if (log.isDebugEnabled()) {
+                log.debug("当前用户状态: {}", userStatus);
+            }
             log.info("{} 登录成功", username);
 
-            // 发送聊天历史
-            try {
-                sendChatHistory(ctx, username);
-            } catch (Exception e) {
-                log.error("Error sending chat history", e);
+            // 发送聊天历史；按需分页的客户端（history: false）登录后自行用 history 请求拉取
+            if (!Boolean.FALSE.equals(data.get("history"))) {
+                try {
+                    sendChatHistory(ctx, username);
+                } catch (Exception e) {
+                    log.error("Error sending chat history", e);
+                }
             }
 
             // 广播用户状态更新
@@ -248,6 +413,10 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
             sendRegisterResponse(ctx, "failure", "用户名和密码不能为空");
             return;
         }
+        if (!ConversationKey.isValidUsername(username)) {
+            sendRegisterResponse(ctx, "failure", "用户名不能为空，也不能包含 " + ConversationKey.SEPARATOR);
+            return;
+        }
 
         log.info("Attempting registration with username: {}", username);
 
@@ -255,6 +424,7 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
             // 用户不存在，进行注册
             User newUser = new User(username, password);
             userRepository.save(newUser);
+            summaries.registered(username);
             userStatus.put(username, "offline"); // 注册后默认为离线
 
             sendRegisterResponse(ctx, "success", null);
@@ -272,7 +442,7 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
     /**
      * 处理消息发送
      */
-    private void handleMessage(ChannelHandlerContext ctx, Map<String, Object> data) {
+    private void handleMessage(ChannelHandlerContext ctx, Map<String, Object> data, MessageTrace trace) {
         String sender = channelUsers.get(ctx.channel().id());
         if (sender == null) {
             log.warn("未登录用户尝试发送消息");
@@ -287,18 +457,36 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
             sendError(ctx, "消息内容不能为空");
             return;
         }
+        // userStatus 含全部已注册用户，不存在的接收者不入库，也不产生会话摘要
+        if (receiver != null && !receiver.isEmpty() && !userStatus.containsKey(receiver)) {
+            sendError(ctx, "用户 " + receiver + " 不存在");
+            return;
+        }
 
         // 保存消息到数据库
         Message message = new Message(sender, receiver, content, new Date());
-        messageRepository.save(message);
+        long persistStartedAt = admission.persistStarted();
+        trace.persistStarted();
+        try {
+            messageStore.save(message);
+        } finally {
+            admission.persistFinished(persistStartedAt);
+            chatMetrics.persistence("save", persistStartedAt);
+            trace.persisted();
+        }
+        summaries.recorded(message);
 
         // 准备消息响应
         Map<String, Object> messageResponse = new HashMap<>();
         messageResponse.put("type", "message");
+        messageResponse.put("id", String.valueOf(message.getId())); // id 超过 2^53，以字符串下发
         messageResponse.put("sender", sender);
         messageResponse.put("content", content);
         messageResponse.put("receiver", receiver); // 可以为 null
         messageResponse.put("timestamp", message.getTimestamp().getTime()); // 时间戳
+        if (trace.traceId() != null) {
+            messageResponse.put("traceId", trace.traceId()); // 被采样的消息带上 traceId，便于与 JFR 记录关联
+        }
 
         String messageJson;
         try {
@@ -309,6 +497,8 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
         }
 
         TextWebSocketFrame messageFrame = new TextWebSocketFrame(messageJson);
+        int frameBytes = messageFrame.content().readableBytes();
+        trace.fanoutStarted();
 
         if (receiver != null && !receiver.isEmpty()) {
             // 私聊逻辑
@@ -316,12 +506,13 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
             if (receiverChannel != null && receiverChannel.isActive()) {
                 try {
                     // 发送给接收者
-                    log.warn(messageFrame.copy().text());
-                    receiverChannel.writeAndFlush(messageFrame.copy());
-                    log.warn(messageFrame.copy().text());
+                    trace.wrote(receiverChannel.writeAndFlush(messageFrame.copy()), frameBytes);
                     // 发送给发送者自己，确认消息已发送
-                    ctx.channel().writeAndFlush(messageFrame.copy());
-                    log.info("私聊消息从 {} 发送给 {}", sender, receiver);
+                    trace.wrote(ctx.channel().writeAndFlush(messageFrame.copy()), frameBytes);
+                    chatMetrics.fanout("private", 2);
+                    if (log.isDebugEnabled()) {
+                        log.debug("私聊消息从 {} 发送给 {}: {}", sender, receiver, messageJson);
+                    }
                 } catch (Exception e) {
                     log.error("Error sending private message", e);
                 }
@@ -331,26 +522,107 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
                 /**
                  * 发给自己
                  */
-                ctx.channel().writeAndFlush(messageFrame.copy());
-
+                trace.wrote(ctx.channel().writeAndFlush(messageFrame.copy()), frameBytes);
+                chatMetrics.fanout("private", 1);
             }
         } else {
             // 群聊逻辑
+            int recipients = 0;
             for (Map.Entry<String, Channel> entry : userChannels.entrySet()) {
                 String user = entry.getKey();
                 Channel channel = entry.getValue();
                 if (!user.equals(sender) && channel.isActive()) {
                     try {
-                        channel.writeAndFlush(messageFrame.copy());
+                        trace.wrote(channel.writeAndFlush(messageFrame.copy()), frameBytes);
+                        recipients++;
                     } catch (Exception e) {
                         log.error("Error broadcasting message", e);
                     }
                 }
             }
             // 发送给发送者自己
-            ctx.channel().writeAndFlush(messageFrame.copy());
-            log.info("群聊消息从 {} 发送给所有人（包括发送者）", sender);
+            trace.wrote(ctx.channel().writeAndFlush(messageFrame.copy()), frameBytes);
+            chatMetrics.fanout("group", recipients + 1);
+            log.debug("群聊消息从 {} 发送给所有人（包括发送者）", sender);
+        }
+        trace.fannedOut();
+    }
+
+    /**
+     * 分页历史：返回会话中 id 小于 before 的最近 limit 条消息，按时间先后排列。
+     * 客户端以当前最早一条消息的 id 作为下一页的 before，翻过热存储后由存储层继续读归档
+     */
+    private void handleHistory(ChannelHandlerContext ctx, Map<String, Object> data) {
+        String username = channelUsers.get(ctx.channel().id());
+        if (username == null) {
+            sendError(ctx, "未登录，无法查询历史");
+            return;
+        }
+        String peer = data.get("receiver") instanceof String r && !r.isEmpty() ? r : null;
+        long before;
+        int limit;
+        try {
+            before = data.get("before") == null ? Long.MAX_VALUE : Long.parseLong(data.get("before").toString());
+            limit = data.get("limit") == null ? DEFAULT_HISTORY_PAGE : Integer.parseInt(data.get("limit").toString());
+        } catch (NumberFormatException e) {
+            sendError(ctx, "历史查询参数无效");
+            return;
+        }
+        limit = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE));
+
+        long queryStart = System.nanoTime();
+        List<Message> messages = messageStore.findHistory(username, peer, before, limit);
+        chatMetrics.persistence("history", queryStart);
+        List<Map<String, Object>> page = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            page.add(messageData(message));
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "history");
+        response.put("receiver", peer);
+        response.put("messages", page);
+        // 取满一页时可能还有更早的消息
+        response.put("hasMore", messages.size() == limit);
+        try {
+            ctx.writeAndFlush(new TextWebSocketFrame(objectMapper.writeValueAsString(response)));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing history page", e);
+        }
+    }
+
+    /**
+     * 处理瞬时事件（typing / read）：不落库，交给合并器按会话合并后投递
+     */
+    private void handleEphemeral(ChannelHandlerContext ctx, String type, Map<String, Object> data) {
+        String sender = channelUsers.get(ctx.channel().id());
+        if (sender == null) {
+            sendError(ctx, "未登录，无法发送事件");
+            return;
+        }
+        String receiver = data.get("receiver") instanceof String r && !r.isEmpty() ? r : null;
+
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("type", type);
+        frame.put("sender", sender);
+        frame.put("receiver", receiver);
+        if ("typing".equals(type)) {
+            // 只有 typing / idle 两种状态，其余一律视为 idle
+            frame.put("state", "typing".equals(data.get("state")) ? "typing" : "idle");
+        } else {
+            // 已读位置：读到的最后一条消息的时间戳
+            if (!(data.get("timestamp") instanceof Number timestamp)) {
+                sendError(ctx, "已读回执缺少 timestamp");
+                return;
+            }
+            frame.put("timestamp", timestamp.longValue());
+            summaries.markRead(sender, receiver, timestamp.longValue());
         }
+
+        if (ephemeralEvents == null) {
+            ephemeralEvents = eventRelay.coalescer(ctx.executor());
+        }
+        EphemeralEvent event = new EphemeralEvent(type, sender, receiver, frame);
+        ephemeralEvents.offer(event.coalescingKey(), event);
     }
 
     /**
@@ -393,9 +665,20 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
      * 发送错误信息
      */
     private void sendError(ChannelHandlerContext ctx, String errorMsg) {
+        sendError(ctx, null, errorMsg);
+    }
+
+    /**
+     * 发送带错误码的错误信息，busy / rate_limited 附带建议的重试等待时间
+     */
+    private void sendError(ChannelHandlerContext ctx, String code, String errorMsg) {
         Map<String, Object> errorResponse = new HashMap<>();
         errorResponse.put("type", "error");
         errorResponse.put("message", errorMsg);
+        if (code != null) {
+            errorResponse.put("code", code);
+            errorResponse.put("retryAfterMs", admission.retryAfterMs());
+        }
         try {
             String json = objectMapper.writeValueAsString(errorResponse);
             ctx.writeAndFlush(new TextWebSocketFrame(json));
@@ -421,12 +704,15 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
         }
 
         TextWebSocketFrame frame = new TextWebSocketFrame(messageJson);
+        int recipients = 0;
 
         for (Channel channel : userChannels.values()) {
             if (channel.isActive()) {
                 channel.writeAndFlush(frame.copy());
+                recipients++;
             }
         }
+        chatMetrics.fanout("presence", recipients);
     }
 
     /**
@@ -448,43 +734,61 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
         }
 
         TextWebSocketFrame frame = new TextWebSocketFrame(messageJson);
+        int recipients = 0;
 
         for (Channel channel : userChannels.values()) {
             if (channel.isActive()) {
                 channel.writeAndFlush(frame.copy());
+                recipients++;
             }
         }
+        chatMetrics.fanout("presence", recipients);
+    }
+
+    /**
+     * 发送会话摘要：每个会话的最后一条消息与未读数，客户端据此直接渲染会话列表
+     */
+    private void sendConversations(ChannelHandlerContext ctx, String username) {
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("type", "conversations");
+        frame.put("conversations", summaries.summariesFor(username));
+        try {
+            ctx.writeAndFlush(new TextWebSocketFrame(objectMapper.writeValueAsString(frame)));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing conversation summaries", e);
+        }
     }
 
     /**
      * 发送聊天历史记录
      */
     private void sendChatHistory(ChannelHandlerContext ctx, String username) throws Exception {
-        List<Message> messages = messageRepository.findAllByOrderByTimestampAsc();
+        // 存储层只返回该用户可见的消息
+        long queryStart = System.nanoTime();
+        List<Message> messages = messageStore.findVisibleTo(username);
+        chatMetrics.persistence("visible", queryStart);
 
         for (Message message : messages) {
-            String receiver = message.getReceiver();
-            String content = message.getContent();
-            String sender = message.getSender();
-            Date date = message.getTimestamp();
-
-            // 判断消息是否为用户可见
-            if (receiver == null || sender.equals(username) || username.equals(receiver)) {
-                Map<String, Object> messageData = new HashMap<>();
-                messageData.put("type", "message");
-                messageData.put("sender", sender);
-                messageData.put("content", content);
-                messageData.put("timestamp", date.getTime()); // 使用时间戳
-                messageData.put("receiver", receiver); // 可以为 null
-
-                try {
-                    String messageJson = objectMapper.writeValueAsString(messageData);
-                    ctx.writeAndFlush(new TextWebSocketFrame(messageJson));
-                } catch (JsonProcessingException e) {
-                    log.error("Error serializing chat history message", e);
-                }
+            try {
+                String messageJson = objectMapper.writeValueAsString(messageData(message));
+                ctx.write(new TextWebSocketFrame(messageJson));
+            } catch (JsonProcessingException e) {
+                log.error("Error serializing chat history message", e);
             }
         }
+        // 历史消息批量写出后统一 flush，避免每条消息一次系统调用
+        ctx.flush();
+    }
+
+    private static Map<String, Object> messageData(Message message) {
+        Map<String, Object> messageData = new HashMap<>();
+        messageData.put("type", "message");
+        messageData.put("id", String.valueOf(message.getId()));
+        messageData.put("sender", message.getSender());
+        messageData.put("content", message.getContent());
+        messageData.put("timestamp", message.getTimestamp().getTime()); // 使用时间戳
+        messageData.put("receiver", message.getReceiver()); // 可以为 null
+        return messageData;
     }
 
     /**
@@ -492,10 +796,15 @@ public class ChatServerHandler extends SimpleChannelInboundHandler<TextWebSocket
      */
     @Override
     public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        chatMetrics.connectionClosed(ctx.channel());
+        if (ephemeralEvents != null) {
+            ephemeralEvents.cancel();
+        }
         String username = channelUsers.remove(ctx.channel().id());
         if (username != null) {
             userChannels.remove(username);
             userStatus.put(username, "offline"); // 设置为离线
+            summaries.loggedOut(username);
             log.info("{} 已下线", username);
 
             // 广播用户状态更新
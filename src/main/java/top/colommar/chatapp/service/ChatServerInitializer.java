@@ -1,32 +1,94 @@
 package top.colommar.chatapp.service;
 
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.util.ReferenceCountUtil;
+import top.colommar.chatapp.admission.AdmissionController;
+import top.colommar.chatapp.event.EphemeralEventRelay;
+import top.colommar.chatapp.inbox.ConversationSummaries;
+import top.colommar.chatapp.metrics.ChatMetrics;
 import top.colommar.chatapp.repository.ChatFileRepository;
-import top.colommar.chatapp.repository.MessageRepository;
 import top.colommar.chatapp.repository.UserRepository;
+import top.colommar.chatapp.storage.MessageStore;
+import top.colommar.chatapp.trace.MessageTracer;
 
 public class ChatServerInitializer extends ChannelInitializer<SocketChannel> {
 
     private final UserRepository userRepository;
-    private final MessageRepository messageRepository;
+    private final MessageStore messageStore;
     private final ChatFileRepository chatfileRepository;
+    private final ChatMetrics chatMetrics;
+    private final AdmissionController admission;
+    private final EphemeralEventRelay eventRelay;
+    private final MessageTracer tracer;
+    private final ConversationSummaries summaries;
+    private final ChannelGroup allChannels;
 
-    public ChatServerInitializer(UserRepository userRepository, MessageRepository messageRepository, ChatFileRepository chatfileRepository) {
+    public ChatServerInitializer(UserRepository userRepository, MessageStore messageStore, ChatFileRepository chatfileRepository,
+                                 ChatMetrics chatMetrics, AdmissionController admission, EphemeralEventRelay eventRelay,
+                                 MessageTracer tracer, ConversationSummaries summaries, ChannelGroup allChannels) {
         this.userRepository = userRepository;
-        this.messageRepository = messageRepository;
+        this.messageStore = messageStore;
         this.chatfileRepository = chatfileRepository;
+        this.chatMetrics = chatMetrics;
+        this.admission = admission;
+        this.eventRelay = eventRelay;
+        this.tracer = tracer;
+        this.summaries = summaries;
+        this.allChannels = allChannels;
     }
 
     @Override
     protected void initChannel(SocketChannel socketChannel) throws Exception {
+        // 关闭服务器时据此关闭所有连接，连接断开后自动移出
+        allChannels.add(socketChannel);
+        if (admission.isOverloaded()) {
+            // 过载时不再接受新会话，握手请求直接以 503 拒绝
+            admission.rejected("connection");
+            socketChannel.pipeline()
+                    .addLast(new HttpServerCodec())
+                    .addLast(new ServiceUnavailableHandler(admission.retryAfterMs()));
+            return;
+        }
         socketChannel.pipeline()
                 .addLast(new HttpServerCodec())
                 .addLast(new HttpObjectAggregator(65536))
                 .addLast(new WebSocketServerProtocolHandler("/chat")) // 使用 Netty 提供的处理器
-                .addLast(new ChatServerHandler(userRepository, messageRepository, chatfileRepository)); // 业务处理器
+                .addLast(new ChatServerHandler(userRepository, messageStore, chatfileRepository, chatMetrics,
+                        admission, eventRelay, tracer, summaries)); // 业务处理器
+    }
+
+    /**
+     * 对第一个 HTTP 请求回复 503 和 Retry-After 后关闭连接
+     */
+    private static final class ServiceUnavailableHandler extends ChannelInboundHandlerAdapter {
+
+        private final long retryAfterMs;
+
+        ServiceUnavailableHandler(long retryAfterMs) {
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            boolean request = msg instanceof HttpRequest;
+            ReferenceCountUtil.release(msg);
+            if (!request) {
+                return;
+            }
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.SERVICE_UNAVAILABLE);
+            response.headers()
+                    .set(HttpHeaderNames.RETRY_AFTER, Math.max(1, (retryAfterMs + 999) / 1000))
+                    .set(HttpHeaderNames.CONTENT_LENGTH, 0)
+                    .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
     }
 }
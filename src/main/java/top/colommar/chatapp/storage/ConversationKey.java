@@ -0,0 +1,31 @@
+package top.colommar.chatapp.storage;
+
+/**
+ * 会话键：群聊为空串，私聊为按字典序排列、以 {@link #SEPARATOR} 分隔的两个用户名，与参与者的先后无关
+ *
+ * 会话键作为 conversation 表的主键和归档段的索引键持久化，因此用可打印字符分隔（部分数据库不接受文本中的 NUL），
+ * 注册时拒绝包含分隔符的用户名。
+ */
+public final class ConversationKey {
+
+    public static final String GROUP = "";
+
+    public static final char SEPARATOR = '|';
+
+    private ConversationKey() {
+    }
+
+    public static String of(String sender, String receiver) {
+        if (receiver == null || receiver.isEmpty()) {
+            return GROUP;
+        }
+        return sender.compareTo(receiver) <= 0 ? sender + SEPARATOR + receiver : receiver + SEPARATOR + sender;
+    }
+
+    /**
+     * 用户名能否用于会话键
+     */
+    public static boolean isValidUsername(String username) {
+        return !username.isEmpty() && username.indexOf(SEPARATOR) < 0;
+    }
+}
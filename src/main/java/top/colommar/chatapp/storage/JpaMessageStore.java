@@ -0,0 +1,61 @@
+package top.colommar.chatapp.storage;
+
+import org.springframework.data.domain.PageRequest;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于 JPA 的消息存储，即原先直接使用 MessageRepository 的行为
+ */
+public class JpaMessageStore implements MessageStore {
+
+    private final MessageRepository messageRepository;
+
+    public JpaMessageStore(MessageRepository messageRepository) {
+        this.messageRepository = messageRepository;
+    }
+
+    @Override
+    public Message save(Message message) {
+        return messageRepository.save(message);
+    }
+
+    @Override
+    public List<Message> findVisibleTo(String username) {
+        return messageRepository.findByReceiverIsNullOrSenderOrReceiverOrderByTimestampAsc(username, username);
+    }
+
+    @Override
+    public List<Message> findHistory(String username, String peer, long beforeId, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        List<Message> messages = peer == null || peer.isEmpty()
+                ? messageRepository.findGroupBefore(beforeId, page)
+                : messageRepository.findPrivateBefore(username, peer, beforeId, page);
+        // 查询按 id 倒序取最近的一页，返回前翻转为升序
+        List<Message> ascending = new ArrayList<>(messages);
+        Collections.reverse(ascending);
+        return ascending;
+    }
+
+    @Override
+    public List<Message> findArchivable(long afterId, long cutoff, int limit) {
+        // 时间戳在处理器中生成、id 在落库时分配，两者顺序不完全一致；
+        // 只取 id 连续的一段，遇到第一条不够旧的消息即停止，deleteThrough 才不会删掉未归档的消息
+        List<Message> batch = messageRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit));
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).getTimestamp().getTime() >= cutoff) {
+                return batch.subList(0, i);
+            }
+        }
+        return batch;
+    }
+
+    @Override
+    public void deleteThrough(long id) {
+        messageRepository.deleteThrough(id);
+    }
+}
@@ -0,0 +1,70 @@
+package top.colommar.chatapp.storage;
+
+import top.colommar.chatapp.id.Snowflake;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.storage.log.MessageLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * 基于本地追加写日志的消息存储，消息 id 在追加前由 Snowflake 生成并写入记录
+ */
+public class LogMessageStore implements MessageStore, AutoCloseable {
+
+    private final MessageLog messageLog;
+    private final Snowflake snowflake;
+
+    public LogMessageStore(MessageLog messageLog, Snowflake snowflake) {
+        this.messageLog = messageLog;
+        this.snowflake = snowflake;
+    }
+
+    /**
+     * id 的分配与追加在同一把锁内完成，保证日志中的 id 按追加顺序递增
+     */
+    @Override
+    public Message save(Message message) {
+        try {
+            messageLog.append(message, () -> message.setId(snowflake.nextId()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append message to log", e);
+        }
+        return message;
+    }
+
+    @Override
+    public List<Message> findVisibleTo(String username) {
+        return messageLog.readVisibleTo(username);
+    }
+
+    @Override
+    public List<Message> findHistory(String username, String peer, long beforeId, int limit) {
+        return messageLog.readConversation(ConversationKey.of(username, peer), beforeId, limit);
+    }
+
+    @Override
+    public List<Message> findArchivable(long afterId, long cutoff, int limit) {
+        return messageLog.readOlderThan(afterId, cutoff, limit);
+    }
+
+    @Override
+    public void deleteThrough(long id) {
+        try {
+            messageLog.deleteThrough(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete archived log segments", e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        messageLog.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        messageLog.close();
+    }
+}
@@ -0,0 +1,51 @@
+package top.colommar.chatapp.storage;
+
+import top.colommar.chatapp.model.Message;
+
+import java.util.List;
+
+/**
+ * 聊天消息的存储后端
+ *
+ * 由 chat.storage.messages 选择实现：log（默认，本地追加写日志）或 jpa（走 MessageRepository）
+ */
+public interface MessageStore {
+
+    /**
+     * 保存一条消息，返回带有 id 的消息
+     */
+    Message save(Message message);
+
+    /**
+     * 返回用户可见的全部消息（群聊以及其发送或接收的私聊），按时间先后排列
+     */
+    List<Message> findVisibleTo(String username);
+
+    /**
+     * 分页读取一个会话的历史：id 小于 beforeId 的最近 limit 条消息，按 id 升序
+     *
+     * @param username 发起查询的用户，只能读取自己参与的会话
+     * @param peer     私聊对象，null 表示群聊
+     */
+    List<Message> findHistory(String username, String peer, long beforeId, int limit);
+
+    /**
+     * 归档用：id 大于 afterId 的最早一批消息，按 id 升序，最多 limit 条，遇到第一条时间戳不早于 cutoff 的消息即停止。
+     * 返回的 id 必须是连续的一段，之后才能按 id 上界 {@link #deleteThrough} 删除。不支持归档的实现返回空列表
+     */
+    default List<Message> findArchivable(long afterId, long cutoff, int limit) {
+        return List.of();
+    }
+
+    /**
+     * 归档完成后删除 id 不大于 id 的消息。实现可以只删除其中一部分（如日志只删除整段），调用方需自行过滤已归档的消息
+     */
+    default void deleteThrough(long id) {
+    }
+
+    /**
+     * 把尚未落盘的数据刷到持久存储
+     */
+    default void flush() {
+    }
+}
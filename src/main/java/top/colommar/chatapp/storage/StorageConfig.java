@@ -0,0 +1,49 @@
+package top.colommar.chatapp.storage;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import top.colommar.chatapp.id.Snowflake;
+import top.colommar.chatapp.repository.MessageRepository;
+import top.colommar.chatapp.storage.archive.MessageArchive;
+import top.colommar.chatapp.storage.log.MessageLog;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * 按 chat.storage.messages 装配消息存储后端，默认使用本地消息日志
+ *
+ * 用户与文件元数据仍由 Spring Data 仓库负责（MySQL，local 配置下为嵌入式 H2）
+ */
+@Configuration
+@EnableConfigurationProperties(StorageProperties.class)
+public class StorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "chat.storage", name = "messages", havingValue = "jpa")
+    public MessageStore jpaMessageStore(MessageRepository messageRepository, StorageProperties properties)
+            throws IOException {
+        return tiered(new JpaMessageStore(messageRepository), properties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "chat.storage", name = "messages", havingValue = "log", matchIfMissing = true)
+    public MessageStore logMessageStore(StorageProperties properties, Snowflake snowflake) throws IOException {
+        StorageProperties.Log log = properties.getLog();
+        return tiered(new LogMessageStore(new MessageLog(Paths.get(log.getDir()), log), snowflake), properties);
+    }
+
+    /**
+     * 开启归档时在热存储外包一层冷热分层存储
+     */
+    private static MessageStore tiered(MessageStore hot, StorageProperties properties) throws IOException {
+        StorageProperties.Archive archive = properties.getArchive();
+        if (!archive.isEnabled()) {
+            return hot;
+        }
+        return new TieredMessageStore(hot, new MessageArchive(Paths.get(archive.getDir()), archive.getBlockMessages()),
+                archive);
+    }
+}
@@ -0,0 +1,111 @@
+package top.colommar.chatapp.storage;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 存储相关配置，前缀 chat.storage
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.storage")
+public class StorageProperties {
+
+    /**
+     * 消息存储后端：log（默认）或 jpa
+     */
+    private String messages = "log";
+
+    private Log log = new Log();
+
+    private Archive archive = new Archive();
+
+    @Data
+    public static class Log {
+
+        /**
+         * 日志段所在目录
+         */
+        private String dir = "data/messages";
+
+        /**
+         * 单个日志段的大小，写满后滚动到新段
+         */
+        private int segmentBytes = 64 * 1024 * 1024;
+
+        /**
+         * 每写入多少字节记录一个稀疏索引项
+         */
+        private int indexIntervalBytes = 4096;
+
+        /**
+         * 落盘策略
+         */
+        private FlushPolicy flush = FlushPolicy.INTERVAL;
+
+        /**
+         * flush=interval 时的落盘间隔
+         */
+        private long flushIntervalMs = 1000;
+
+        /**
+         * 已封存日志段的保留时长，0 表示不按时间清理
+         */
+        private long retentionMs = 0;
+
+        /**
+         * 日志总大小上限，超出后删除最旧的已封存段，0 表示不限
+         */
+        private long retentionBytes = 0;
+    }
+
+    @Data
+    public static class Archive {
+
+        /**
+         * 是否把旧消息搬到压缩归档
+         */
+        private boolean enabled = true;
+
+        /**
+         * 归档段所在目录
+         */
+        private String dir = "data/archive";
+
+        /**
+         * 消息超过这个时长后归档
+         */
+        private long afterMs = TimeUnit.DAYS.toMillis(30);
+
+        /**
+         * 归档任务的执行间隔
+         */
+        private long intervalMs = TimeUnit.HOURS.toMillis(1);
+
+        /**
+         * 单个归档段最多包含的消息数
+         */
+        private int batchSize = 100_000;
+
+        /**
+         * 每个压缩块包含的消息数，分页历史每次至少解压一块
+         */
+        private int blockMessages = 256;
+    }
+
+    public enum FlushPolicy {
+        /**
+         * 每条消息写入后立即 fsync
+         */
+        ALWAYS,
+        /**
+         * 按 flushIntervalMs 周期性 fsync
+         */
+        INTERVAL,
+        /**
+         * 交给操作系统回写
+         */
+        NEVER
+    }
+}
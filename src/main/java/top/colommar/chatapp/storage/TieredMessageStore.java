@@ -0,0 +1,133 @@
+package top.colommar.chatapp.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.storage.archive.MessageArchive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 冷热分层的消息存储：新消息写入热存储，超过 afterMs 的消息由后台任务搬到压缩归档中
+ *
+ * 先写归档段再从热存储删除，两步之间崩溃最多留下重复数据；热存储中 id 不大于 {@link MessageArchive#lastArchivedId()}
+ * 的消息一律视为已归档并被过滤掉。登录时的全量历史只读热存储，分页历史翻过热存储后继续读归档。
+ */
+@Slf4j
+public class TieredMessageStore implements MessageStore, AutoCloseable {
+
+    private final MessageStore hot;
+    private final MessageArchive archive;
+    private final StorageProperties.Archive config;
+    private final ScheduledExecutorService archiver;
+    // 由本对象的锁保护，关闭后不再归档
+    private boolean closed;
+
+    public TieredMessageStore(MessageStore hot, MessageArchive archive, StorageProperties.Archive config) {
+        this.hot = hot;
+        this.archive = archive;
+        this.config = config;
+        this.archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        archiver.scheduleWithFixedDelay(this::archiveQuietly, config.getIntervalMs(), config.getIntervalMs(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Message save(Message message) {
+        return hot.save(message);
+    }
+
+    @Override
+    public List<Message> findVisibleTo(String username) {
+        long archived = archive.lastArchivedId();
+        List<Message> messages = hot.findVisibleTo(username);
+        if (archived < 0) {
+            return messages;
+        }
+        return messages.stream().filter(m -> m.getId() > archived).toList();
+    }
+
+    @Override
+    public List<Message> findHistory(String username, String peer, long beforeId, int limit) {
+        long archived = archive.lastArchivedId();
+        List<Message> recent = new ArrayList<>();
+        if (beforeId > archived + 1) {
+            for (Message message : hot.findHistory(username, peer, beforeId, limit)) {
+                if (message.getId() > archived) {
+                    recent.add(message);
+                }
+            }
+        }
+        if (recent.size() >= limit) {
+            return recent;
+        }
+        // 以热存储返回的最早一条为界继续向前读归档；期间若有新段写出、热存储被删，也不会漏掉或重复
+        long before = recent.isEmpty() ? beforeId : recent.get(0).getId();
+        List<Message> older = archive.findHistory(ConversationKey.of(username, peer), before, limit - recent.size());
+        if (older.isEmpty()) {
+            return recent;
+        }
+        List<Message> page = new ArrayList<>(older.size() + recent.size());
+        page.addAll(older);
+        page.addAll(recent);
+        return page;
+    }
+
+    /**
+     * 归档所有超过保留时长的热数据，返回本次归档的消息数
+     */
+    public synchronized int archiveOnce() throws IOException {
+        if (closed) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - config.getAfterMs();
+        int total = 0;
+        while (true) {
+            List<Message> batch = hot.findArchivable(archive.lastArchivedId(), cutoff, config.getBatchSize());
+            if (batch.isEmpty()) {
+                break;
+            }
+            archive.append(batch);
+            hot.deleteThrough(archive.lastArchivedId());
+            total += batch.size();
+            if (batch.size() < config.getBatchSize()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private void archiveQuietly() {
+        try {
+            archiveOnce();
+        } catch (Exception e) {
+            log.error("Failed to archive messages", e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        hot.flush();
+    }
+
+    @Override
+    public void close() throws Exception {
+        // 不中断归档线程：中断会关闭它正在写的 FileChannel。持有与 archiveOnce 相同的锁，等进行中的一轮结束再关闭两层存储
+        archiver.shutdown();
+        synchronized (this) {
+            closed = true;
+            archive.close();
+            if (hot instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package top.colommar.chatapp.storage.archive;
+
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.storage.ConversationKey;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 归档段：一次归档写出的不可变压缩文件
+ *
+ * 文件格式：int 魔数 | 若干 Deflate 压缩块 | 索引 | long 索引位置。消息按会话分组、组内按 id 升序，每 blockMessages 条压缩为一块。
+ * 索引记录每个会话各块的 id 范围、时间范围、文件位置与长度，打开时整体读入内存，查询只读取并解压命中的块。
+ */
+final class ArchiveSegment implements AutoCloseable {
+
+    static final String SUFFIX = ".arc";
+    private static final int MAGIC = 0x43415243;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long firstId;
+    private final long lastId;
+    private final int messageCount;
+    private final Map<String, List<Block>> blocks;
+
+    /**
+     * 索引项：一个会话中连续的一段消息
+     */
+    record Block(long firstId, long lastId, long firstTimestamp, long lastTimestamp,
+                 long position, int length, int count) {
+    }
+
+    private ArchiveSegment(Path path, FileChannel channel, long firstId, long lastId, int messageCount,
+                           Map<String, List<Block>> blocks) {
+        this.path = path;
+        this.channel = channel;
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.messageCount = messageCount;
+        this.blocks = blocks;
+    }
+
+    static String fileName(long firstId) {
+        return String.format("%020d%s", firstId, SUFFIX);
+    }
+
+    /**
+     * 写出一个新段：先写临时文件并 fsync，再原子改名，崩溃时不会留下半个段
+     *
+     * @param messages 按 id 升序、非空
+     */
+    static ArchiveSegment write(Path dir, List<Message> messages, int blockMessages) throws IOException {
+        Map<String, List<Message>> byConversation = new LinkedHashMap<>();
+        for (Message message : messages) {
+            byConversation.computeIfAbsent(ConversationKey.of(message.getSender(), message.getReceiver()),
+                    k -> new ArrayList<>()).add(message);
+        }
+
+        long firstId = messages.get(0).getId();
+        Path path = dir.resolve(fileName(firstId));
+        Path tmp = dir.resolve(fileName(firstId) + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            long position = 4;
+            Map<String, List<Block>> index = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Message>> entry : byConversation.entrySet()) {
+                List<Message> conversation = entry.getValue();
+                List<Block> conversationBlocks = new ArrayList<>();
+                for (int from = 0; from < conversation.size(); from += blockMessages) {
+                    List<Message> chunk = conversation.subList(from, Math.min(from + blockMessages, conversation.size()));
+                    byte[] compressed = compress(chunk);
+                    out.write(compressed);
+                    conversationBlocks.add(new Block(chunk.get(0).getId(), chunk.get(chunk.size() - 1).getId(),
+                            chunk.get(0).getTimestamp().getTime(), chunk.get(chunk.size() - 1).getTimestamp().getTime(),
+                            position, compressed.length, chunk.size()));
+                    position += compressed.length;
+                }
+                index.put(entry.getKey(), conversationBlocks);
+            }
+
+            out.writeLong(firstId);
+            out.writeLong(messages.get(messages.size() - 1).getId());
+            out.writeInt(messages.size());
+            out.writeInt(index.size());
+            for (Map.Entry<String, List<Block>> entry : index.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Block block : entry.getValue()) {
+                    out.writeLong(block.firstId());
+                    out.writeLong(block.lastId());
+                    out.writeLong(block.firstTimestamp());
+                    out.writeLong(block.lastTimestamp());
+                    out.writeLong(block.position());
+                    out.writeInt(block.length());
+                    out.writeInt(block.count());
+                }
+            }
+            out.writeLong(position);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    static ArchiveSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < 12 || readFully(channel, 0, 4).getInt() != MAGIC) {
+                throw new IOException("Not an archive segment: " + path);
+            }
+            long indexPosition = readFully(channel, size - 8, 8).getLong();
+            ByteBuffer indexBytes = readFully(channel, indexPosition, (int) (size - 8 - indexPosition));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    indexBytes.array(), indexBytes.arrayOffset(), indexBytes.remaining()));
+            long firstId = in.readLong();
+            long lastId = in.readLong();
+            int messageCount = in.readInt();
+            int conversations = in.readInt();
+            Map<String, List<Block>> blocks = new HashMap<>(conversations * 2);
+            for (int i = 0; i < conversations; i++) {
+                String key = readString(in);
+                int count = in.readInt();
+                List<Block> conversationBlocks = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    conversationBlocks.add(new Block(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                            in.readLong(), in.readInt(), in.readInt()));
+                }
+                blocks.put(key, conversationBlocks);
+            }
+            return new ArchiveSegment(path, channel, firstId, lastId, messageCount, blocks);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long firstId() {
+        return firstId;
+    }
+
+    long lastId() {
+        return lastId;
+    }
+
+    int messageCount() {
+        return messageCount;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * 把会话中 id 小于 beforeId 的消息按 id 从新到旧追加到 out，直到 out 中共有 limit 条
+     */
+    void collectBefore(String conversationKey, long beforeId, int limit, List<Message> out) throws IOException {
+        List<Block> conversationBlocks = blocks.getOrDefault(conversationKey, List.of());
+        for (int i = conversationBlocks.size() - 1; i >= 0 && out.size() < limit; i--) {
+            Block block = conversationBlocks.get(i);
+            if (block.firstId() >= beforeId) {
+                continue;
+            }
+            List<Message> messages = readBlock(block);
+            for (int j = messages.size() - 1; j >= 0 && out.size() < limit; j--) {
+                if (messages.get(j).getId() < beforeId) {
+                    out.add(messages.get(j));
+                }
+            }
+        }
+    }
+
+    private List<Message> readBlock(Block block) throws IOException {
+        ByteBuffer compressed = readFully(channel, block.position(), block.length());
+        List<Message> messages = new ArrayList<>(block.count());
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(
+                compressed.array(), compressed.arrayOffset(), compressed.remaining())))) {
+            for (int i = 0; i < block.count(); i++) {
+                long id = in.readLong();
+                long timestamp = in.readLong();
+                String sender = readString(in);
+                String receiver = readString(in);
+                String content = readString(in);
+                Message message = new Message(sender, receiver, content, new Date(timestamp));
+                message.setId(id);
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 块格式：逐条 long id | long 时间戳 | 发送者 | 接收者 | 内容，字符串为 int 长度（-1 表示 null）+ UTF-8
+     */
+    private static byte[] compress(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // 自带的 Deflater 不会随流关闭而释放，需要手动 end
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            for (Message message : messages) {
+                out.writeLong(message.getId());
+                out.writeLong(message.getTimestamp().getTime());
+                writeString(out, message.getSender());
+                writeString(out, message.getReceiver());
+                writeString(out, message.getContent());
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated archive segment");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
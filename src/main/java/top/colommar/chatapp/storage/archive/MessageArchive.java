@@ -0,0 +1,109 @@
+package top.colommar.chatapp.storage.archive;
+
+import lombok.extern.slf4j.Slf4j;
+import top.colommar.chatapp.model.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * 冷数据归档：目录下一组按 id 范围首尾相接的不可变压缩段
+ *
+ * 每次归档写出一个新段，段文件以首条消息的 id 命名。写入串行化，读取无锁。
+ */
+@Slf4j
+public class MessageArchive implements AutoCloseable {
+
+    private final Path dir;
+    private final int blockMessages;
+    private final List<ArchiveSegment> segments = new CopyOnWriteArrayList<>();
+
+    public MessageArchive(Path dir, int blockMessages) throws IOException {
+        this.dir = dir;
+        this.blockMessages = blockMessages;
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            list.forEach(files::add);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(ArchiveSegment.SUFFIX)) {
+                segments.add(ArchiveSegment.open(file));
+            } else if (name.endsWith(ArchiveSegment.SUFFIX + ".tmp")) {
+                // 上次归档写到一半崩溃留下的临时文件，对应的消息仍在热存储中
+                Files.delete(file);
+            }
+        }
+        log.info("Message archive opened at {}: {} segment(s), archived through id {}", dir, segments.size(),
+                lastArchivedId());
+    }
+
+    /**
+     * 已归档的最大消息 id，尚未归档时为 -1。热存储中 id 不大于它的消息都已在归档中
+     */
+    public long lastArchivedId() {
+        List<ArchiveSegment> snapshot = segments;
+        return snapshot.isEmpty() ? -1 : snapshot.get(snapshot.size() - 1).lastId();
+    }
+
+    /**
+     * 把一批消息写成新段
+     *
+     * @param messages 按 id 升序，且 id 都大于 {@link #lastArchivedId()}
+     */
+    public synchronized void append(List<Message> messages) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (messages.get(0).getId() <= lastArchivedId()) {
+            throw new IllegalArgumentException("Message " + messages.get(0).getId()
+                    + " is already archived (archived through " + lastArchivedId() + ")");
+        }
+        ArchiveSegment segment = ArchiveSegment.write(dir, messages, blockMessages);
+        segments.add(segment);
+        log.info("Archived {} messages (ids {}..{}) to {}", segment.messageCount(), segment.firstId(),
+                segment.lastId(), segment.path().getFileName());
+    }
+
+    /**
+     * 会话中 id 小于 beforeId 的最近 limit 条已归档消息，按 id 升序
+     *
+     * @param conversationKey 见 {@link top.colommar.chatapp.storage.ConversationKey}
+     */
+    public List<Message> findHistory(String conversationKey, long beforeId, int limit) {
+        List<Message> newestFirst = new ArrayList<>();
+        List<ArchiveSegment> snapshot = segments;
+        try {
+            for (int i = snapshot.size() - 1; i >= 0 && newestFirst.size() < limit; i--) {
+                ArchiveSegment segment = snapshot.get(i);
+                if (segment.firstId() < beforeId) {
+                    segment.collectBefore(conversationKey, beforeId, limit, newestFirst);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read message archive", e);
+        }
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (ArchiveSegment segment : segments) {
+            segment.close();
+        }
+    }
+}
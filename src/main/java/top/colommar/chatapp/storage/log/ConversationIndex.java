@@ -0,0 +1,128 @@
+package top.colommar.chatapp.storage.log;
+
+import top.colommar.chatapp.storage.ConversationKey;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按会话划分的二级索引：会话 -> 该会话消息的偏移量与消息 id（均升序）
+ *
+ * 群聊为一个会话，私聊按两个参与者组成会话。索引只在内存中，启动时随日志恢复一并重建。
+ */
+final class ConversationIndex {
+
+    static final String GROUP = ConversationKey.GROUP;
+
+    private final Map<String, OffsetList> byConversation = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> conversationsByUser = new ConcurrentHashMap<>();
+
+    static String key(String sender, String receiver) {
+        return ConversationKey.of(sender, receiver);
+    }
+
+    void add(String sender, String receiver, long offset, long id) {
+        String key = key(sender, receiver);
+        byConversation.computeIfAbsent(key, k -> new OffsetList()).add(offset, id);
+        if (!GROUP.equals(key)) {
+            conversationsByUser.computeIfAbsent(sender, u -> ConcurrentHashMap.newKeySet()).add(key);
+            conversationsByUser.computeIfAbsent(receiver, u -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    /**
+     * 某个会话的全部偏移量
+     */
+    long[] offsetsOf(String key) {
+        OffsetList list = byConversation.get(key);
+        return list == null ? new long[0] : list.snapshot();
+    }
+
+    /**
+     * 某个会话中消息 id 小于 beforeId 的最后 limit 条消息的偏移量，升序
+     */
+    long[] offsetsBefore(String key, long beforeId, int limit) {
+        OffsetList list = byConversation.get(key);
+        return list == null ? new long[0] : list.before(beforeId, limit);
+    }
+
+    /**
+     * 用户可见的所有消息偏移量（群聊 + 其参与的私聊），升序
+     */
+    long[] offsetsVisibleTo(String username) {
+        List<long[]> lists = new ArrayList<>();
+        lists.add(offsetsOf(GROUP));
+        for (String key : conversationsByUser.getOrDefault(username, Set.of())) {
+            lists.add(offsetsOf(key));
+        }
+        return merge(lists);
+    }
+
+    /**
+     * 丢弃早于 startOffset 的索引项，日志段被删除后调用
+     */
+    void trimBefore(long startOffset) {
+        for (OffsetList list : byConversation.values()) {
+            list.trimBefore(startOffset);
+        }
+    }
+
+    private static long[] merge(List<long[]> lists) {
+        int total = 0;
+        for (long[] list : lists) {
+            total += list.length;
+        }
+        long[] merged = new long[total];
+        int position = 0;
+        for (long[] list : lists) {
+            System.arraycopy(list, 0, merged, position, list.length);
+            position += list.length;
+        }
+        // 各列表本身有序，合并后整体排序即可；会话数通常不多，排序开销远小于读取消息
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * 只追加的偏移量列表，附带对应的消息 id 供按 id 分页
+     */
+    private static final class OffsetList {
+
+        private long[] offsets = new long[16];
+        private long[] ids = new long[16];
+        private int size;
+
+        synchronized void add(long offset, long id) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            offsets[size] = offset;
+            ids[size++] = id;
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(offsets, size);
+        }
+
+        synchronized long[] before(long beforeId, int limit) {
+            int end = Arrays.binarySearch(ids, 0, size, beforeId);
+            if (end < 0) {
+                end = -end - 1;
+            }
+            return Arrays.copyOfRange(offsets, Math.max(0, end - limit), end);
+        }
+
+        synchronized void trimBefore(long startOffset) {
+            int from = 0;
+            while (from < size && offsets[from] < startOffset) {
+                from++;
+            }
+            if (from > 0) {
+                offsets = Arrays.copyOfRange(offsets, from, Math.max(from + 16, size));
+                ids = Arrays.copyOfRange(ids, from, Math.max(from + 16, size));
+                size -= from;
+            }
+        }
+    }
+}
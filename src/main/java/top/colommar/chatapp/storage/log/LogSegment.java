@@ -0,0 +1,319 @@
+package top.colommar.chatapp.storage.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 日志段：一个预分配大小、整体内存映射的文件
+ *
+ * 记录格式：int 负载长度 | int CRC32 | 负载，负载以 long 时间戳开头。长度为 0 表示段内数据结束。
+ * 每写入约 indexIntervalBytes 字节记录一个稀疏索引项（相对偏移、位置、截至该记录的最大时间戳），
+ * 按偏移量或时间戳定位时先二分索引，再从索引项向后顺序扫描。
+ * 只有持有 MessageLog 锁的线程会写入；读线程只读取已发布的 count/size 之前的数据。
+ */
+final class LogSegment implements AutoCloseable {
+
+    static final int HEADER_BYTES = 8;
+    static final String SUFFIX = ".log";
+
+    private final long baseOffset;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int indexIntervalBytes;
+
+    // 已写入并对读线程可见的字节数与记录数，先写数据再更新
+    private volatile int size;
+    private volatile int count;
+    private volatile long firstTimestamp = Long.MAX_VALUE;
+    private volatile long lastTimestamp = Long.MIN_VALUE;
+
+    // 稀疏索引，先替换数组再增加 indexCount，读线程先读 indexCount 再读数组
+    private volatile int[] indexOffsets = new int[64];
+    private volatile int[] indexPositions = new int[64];
+    // 取截至该记录的最大值而非记录自身的时间戳，保证数组单调不减、可以二分
+    private volatile long[] indexTimestamps = new long[64];
+    private volatile int indexCount;
+    private int lastIndexedPosition = -1;
+
+    private LogSegment(long baseOffset, Path path, FileChannel channel, MappedByteBuffer buffer, int indexIntervalBytes) {
+        this.baseOffset = baseOffset;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.indexIntervalBytes = indexIntervalBytes;
+    }
+
+    /**
+     * 打开（或创建）一个段，并扫描已有记录重建稀疏索引。遇到长度越界或 CRC 不符的记录即视为尾部损坏，从该处截断。
+     *
+     * @param visitor 恢复时按顺序回调每条记录，可为 null
+     */
+    static LogSegment open(Path dir, long baseOffset, int capacity, int indexIntervalBytes, RecordVisitor visitor)
+            throws IOException {
+        Path path = dir.resolve(fileName(baseOffset));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int mapSize = (int) Math.max(capacity, channel.size());
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mapSize);
+        LogSegment segment = new LogSegment(baseOffset, path, channel, buffer, indexIntervalBytes);
+        segment.recover(visitor);
+        return segment;
+    }
+
+    static String fileName(long baseOffset) {
+        return String.format("%020d%s", baseOffset, SUFFIX);
+    }
+
+    private void recover(RecordVisitor visitor) {
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(position + HEADER_BYTES, length);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            long timestamp = buffer.getLong(position + HEADER_BYTES);
+            if (visitor != null) {
+                visitor.visit(baseOffset + count, buffer.slice(position + HEADER_BYTES, length));
+            }
+            published(position, length, timestamp);
+            position += HEADER_BYTES + length;
+        }
+        // 清掉可能残留的半条记录，保证下次恢复时在同一位置停下
+        if (position + 4 <= buffer.capacity()) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    long baseOffset() {
+        return baseOffset;
+    }
+
+    long nextOffset() {
+        return baseOffset + count;
+    }
+
+    int recordCount() {
+        return count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    boolean hasRoomFor(int payloadBytes) {
+        // 额外保留 4 字节写入结束标记
+        return size + HEADER_BYTES + payloadBytes + 4 <= buffer.capacity();
+    }
+
+    /**
+     * 追加一条已编码的记录，调用方需保证空间足够且持有写锁
+     *
+     * @return 记录的全局偏移量
+     */
+    long append(byte[] payload) {
+        int position = size;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.put(position + HEADER_BYTES, payload);
+        buffer.putInt(position + HEADER_BYTES + payload.length, 0);
+        // 长度最后写入，崩溃时要么看到完整记录，要么看到结束标记
+        buffer.putInt(position, payload.length);
+        long offset = baseOffset + count;
+        published(position, payload.length, buffer.getLong(position + HEADER_BYTES));
+        return offset;
+    }
+
+    private void published(int position, int length, long timestamp) {
+        if (lastIndexedPosition < 0 || position - lastIndexedPosition >= indexIntervalBytes) {
+            addIndexEntry(count, position, Math.max(lastTimestamp, timestamp));
+            lastIndexedPosition = position;
+        }
+        if (count == 0) {
+            firstTimestamp = timestamp;
+        }
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        size = position + HEADER_BYTES + length;
+        count = count + 1;
+    }
+
+    private void addIndexEntry(int relativeOffset, int position, long maxTimestamp) {
+        int n = indexCount;
+        if (n == indexOffsets.length) {
+            int capacity = n * 2;
+            int[] offsets = new int[capacity];
+            int[] positions = new int[capacity];
+            long[] timestamps = new long[capacity];
+            System.arraycopy(indexOffsets, 0, offsets, 0, n);
+            System.arraycopy(indexPositions, 0, positions, 0, n);
+            System.arraycopy(indexTimestamps, 0, timestamps, 0, n);
+            indexOffsets = offsets;
+            indexPositions = positions;
+            indexTimestamps = timestamps;
+        }
+        indexOffsets[n] = relativeOffset;
+        indexPositions[n] = position;
+        indexTimestamps[n] = maxTimestamp;
+        indexCount = n + 1;
+    }
+
+    /**
+     * 从不大于目标相对偏移量的最近索引项开始，返回指向目标记录的游标；偏移量不在本段时返回 null
+     */
+    Cursor seek(long offset) {
+        int visible = count;
+        long relative = offset - baseOffset;
+        if (relative < 0 || relative >= visible) {
+            return null;
+        }
+        int n = indexCount;
+        int[] offsets = indexOffsets;
+        int low = 0;
+        int high = n - 1;
+        int entry = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid] <= relative) {
+                entry = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Cursor cursor = new Cursor(offsets[entry], indexPositions[entry], visible);
+        cursor.skipTo(offset);
+        return cursor;
+    }
+
+    /**
+     * 第一条时间戳不早于 timestamp 的记录的偏移量，若本段所有记录都更早则返回 nextOffset()
+     *
+     * 二分找到最后一个最大时间戳仍早于 timestamp 的索引项，该项之前的记录都更早，只需从它向后扫描不到一个索引间隔
+     */
+    long offsetForTimestamp(long timestamp) {
+        int visible = count;
+        if (visible == 0) {
+            return baseOffset;
+        }
+        int n = indexCount;
+        long[] timestamps = indexTimestamps;
+        int low = 0;
+        int high = n - 1;
+        int entry = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                entry = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Cursor cursor = new Cursor(indexOffsets[entry], indexPositions[entry], visible);
+        while (cursor.hasNext() && cursor.timestamp() < timestamp) {
+            cursor.advance();
+        }
+        return cursor.offset();
+    }
+
+    /**
+     * 段内顺序游标
+     */
+    final class Cursor {
+
+        private int relative;
+        private int position;
+        private final int limit;
+
+        private Cursor(int relative, int position, int limit) {
+            this.relative = relative;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean hasNext() {
+            return relative < limit;
+        }
+
+        long offset() {
+            return baseOffset + relative;
+        }
+
+        long timestamp() {
+            return buffer.getLong(position + HEADER_BYTES);
+        }
+
+        ByteBuffer payload() {
+            return buffer.slice(position + HEADER_BYTES, buffer.getInt(position));
+        }
+
+        void advance() {
+            position += HEADER_BYTES + buffer.getInt(position);
+            relative++;
+        }
+
+        /**
+         * 顺序前进到目标偏移量（或本段末尾）
+         */
+        void skipTo(long offset) {
+            while (hasNext() && offset() < offset) {
+                advance();
+            }
+        }
+    }
+
+    /**
+     * 恢复时的记录回调
+     */
+    interface RecordVisitor {
+        void visit(long offset, ByteBuffer payload);
+    }
+
+    void flush() {
+        buffer.force();
+    }
+
+    /**
+     * 只刷出指定区间，用于每条记录都要落盘的策略
+     */
+    void flush(int from, int to) {
+        buffer.force(from, to - from);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
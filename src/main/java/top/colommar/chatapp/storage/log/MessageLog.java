@@ -0,0 +1,399 @@
+package top.colommar.chatapp.storage.log;
+
+import lombok.extern.slf4j.Slf4j;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.storage.StorageProperties;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * 分段、内存映射的追加写消息日志
+ *
+ * 每条消息分配一个单调递增的偏移量，段文件以其首条记录的偏移量命名。消息 id 由调用方分配并随记录保存，
+ * 要求按追加顺序递增；未分配 id 的消息以偏移量作为 id。
+ * 写入串行化，读取无锁：读线程只会看到已完整写入的记录。
+ * 段内有稀疏的偏移量/时间戳索引，另有按会话的内存二级索引，历史查询按偏移量升序顺序扫描映射内存。
+ */
+@Slf4j
+public class MessageLog implements AutoCloseable {
+
+    private static final long MAINTENANCE_INTERVAL_MS = 60_000;
+
+    // 批量读取时，向后跳过超过这么多条记录就改用稀疏索引重新定位
+    private static final int RESEEK_DISTANCE = 64;
+
+    private final Path dir;
+    private final StorageProperties.Log config;
+    // 按基准偏移量升序的段，只在持有锁时整体替换，读线程先取一次引用再只用这一份
+    private volatile LogSegment[] segments;
+    private final ConversationIndex conversations = new ConversationIndex();
+    private final ScheduledExecutorService maintenance;
+    private volatile LogSegment active;
+
+    public MessageLog(Path dir, StorageProperties.Log config) throws IOException {
+        this.dir = dir;
+        this.config = config;
+        Files.createDirectories(dir);
+        List<Long> baseOffsets = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(LogSegment.SUFFIX))
+                    .forEach(name -> baseOffsets.add(Long.parseLong(
+                            name.substring(0, name.length() - LogSegment.SUFFIX.length()))));
+        }
+        baseOffsets.sort(null);
+        if (baseOffsets.isEmpty()) {
+            baseOffsets.add(0L);
+        }
+        LogSegment[] opened = new LogSegment[baseOffsets.size()];
+        for (int i = 0; i < opened.length; i++) {
+            opened[i] = openSegment(baseOffsets.get(i));
+        }
+        segments = opened;
+        active = opened[opened.length - 1];
+        log.info("Message log opened at {}: {} segment(s), next offset {}", dir, opened.length, active.nextOffset());
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (config.getFlush() == StorageProperties.FlushPolicy.INTERVAL) {
+            maintenance.scheduleWithFixedDelay(this::flush,
+                    config.getFlushIntervalMs(), config.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        if (config.getRetentionMs() > 0 || config.getRetentionBytes() > 0) {
+            maintenance.scheduleWithFixedDelay(this::enforceRetentionQuietly,
+                    MAINTENANCE_INTERVAL_MS, MAINTENANCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private LogSegment openSegment(long baseOffset) throws IOException {
+        return LogSegment.open(dir, baseOffset, config.getSegmentBytes(), config.getIndexIntervalBytes(),
+                (offset, payload) -> {
+                    Message message = decode(payload, offset);
+                    conversations.add(message.getSender(), message.getReceiver(), offset, message.getId());
+                });
+    }
+
+    /**
+     * 追加一条消息
+     *
+     * @return 分配给该消息的偏移量
+     */
+    public long append(Message message) throws IOException {
+        return append(message, null);
+    }
+
+    /**
+     * 追加一条消息，beforeAppend 在持有写锁、编码之前执行，可用于分配与追加顺序一致的 id
+     *
+     * @return 分配给该消息的偏移量
+     */
+    public synchronized long append(Message message, Runnable beforeAppend) throws IOException {
+        if (beforeAppend != null) {
+            beforeAppend.run();
+        }
+        byte[] payload = encode(message);
+        if (!active.hasRoomFor(payload.length)) {
+            if (active.recordCount() == 0) {
+                throw new IllegalArgumentException("Message of " + payload.length + " bytes exceeds segment size "
+                        + config.getSegmentBytes());
+            }
+            roll();
+        }
+        int from = active.size();
+        long offset = active.append(payload);
+        conversations.add(message.getSender(), message.getReceiver(), offset,
+                message.getId() == null ? offset : message.getId());
+        if (config.getFlush() == StorageProperties.FlushPolicy.ALWAYS) {
+            active.flush(from, active.size());
+        }
+        return offset;
+    }
+
+    private void roll() throws IOException {
+        LogSegment previous = active;
+        previous.flush();
+        LogSegment next = LogSegment.open(dir, previous.nextOffset(), config.getSegmentBytes(),
+                config.getIndexIntervalBytes(), null);
+        LogSegment[] current = segments;
+        LogSegment[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = next;
+        segments = grown;
+        active = next;
+        log.info("Message log rolled to segment {}", next.path().getFileName());
+    }
+
+    /**
+     * 按偏移量读取一条消息，不存在时返回 null
+     */
+    public Message read(long offset) {
+        LogSegment segment = segmentFor(offset);
+        if (segment == null) {
+            return null;
+        }
+        LogSegment.Cursor cursor = segment.seek(offset);
+        return cursor == null ? null : decode(cursor.payload(), offset);
+    }
+
+    /**
+     * 顺序读取全部消息
+     */
+    public List<Message> readAll() {
+        List<Message> messages = new ArrayList<>();
+        for (LogSegment segment : segments) {
+            LogSegment.Cursor cursor = segment.seek(segment.baseOffset());
+            while (cursor != null && cursor.hasNext()) {
+                messages.add(decode(cursor.payload(), cursor.offset()));
+                cursor.advance();
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 读取用户可见的全部消息（群聊和其参与的私聊），按偏移量升序
+     */
+    public List<Message> readVisibleTo(String username) {
+        return readOffsets(conversations.offsetsVisibleTo(username));
+    }
+
+    /**
+     * 会话中 id 小于 beforeId 的最近 limit 条消息，按 id 升序
+     *
+     * @param conversationKey 见 {@link top.colommar.chatapp.storage.ConversationKey}
+     */
+    public List<Message> readConversation(String conversationKey, long beforeId, int limit) {
+        return readOffsets(conversations.offsetsBefore(conversationKey, beforeId, limit));
+    }
+
+    /**
+     * id 大于 afterId、时间戳早于 cutoff 的消息，遇到第一条不早于 cutoff 的消息或读满 limit 条即停止。
+     * 先用时间戳索引定位第一条不早于 cutoff 的消息，再按追加顺序递增的 id 二分跳过已归档的部分，只解码返回的消息
+     */
+    public List<Message> readOlderThan(long afterId, long cutoff, int limit) {
+        long end = offsetForTimestamp(cutoff);
+        long low = startOffset();
+        long high = end;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            Message message = read(mid);
+            // 读不到说明该段已被删除，必然早于 afterId
+            if (message == null || message.getId() <= afterId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return readOffsets(LongStream.range(low, Math.min(end, low + limit)).toArray());
+    }
+
+    /**
+     * 第一条时间戳不早于 timestamp 的消息的偏移量，若所有消息都更早则返回 nextOffset()
+     */
+    public long offsetForTimestamp(long timestamp) {
+        LogSegment[] snapshot = segments;
+        for (LogSegment segment : snapshot) {
+            if (segment.lastTimestamp() >= timestamp) {
+                return segment.offsetForTimestamp(timestamp);
+            }
+        }
+        return snapshot[snapshot.length - 1].nextOffset();
+    }
+
+    /**
+     * 按升序偏移量批量读取：同一段内从上一个位置继续向后扫描，只有跨度较大时才借助稀疏索引重新定位
+     */
+    List<Message> readOffsets(long[] offsets) {
+        List<Message> messages = new ArrayList<>(offsets.length);
+        LogSegment segment = null;
+        LogSegment.Cursor cursor = null;
+        for (long offset : offsets) {
+            if (segment == null || offset >= segment.nextOffset() || offset < segment.baseOffset()) {
+                segment = segmentFor(offset);
+                cursor = segment == null ? null : segment.seek(offset);
+            } else if (cursor == null || offset < cursor.offset() || offset - cursor.offset() > RESEEK_DISTANCE) {
+                cursor = segment.seek(offset);
+            } else {
+                cursor.skipTo(offset);
+            }
+            if (cursor != null && cursor.hasNext() && cursor.offset() == offset) {
+                messages.add(decode(cursor.payload(), offset));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 下一条消息将获得的偏移量
+     */
+    public long nextOffset() {
+        return active.nextOffset();
+    }
+
+    /**
+     * 日志中最早一条消息的偏移量
+     */
+    public long startOffset() {
+        return segments[0].baseOffset();
+    }
+
+    private LogSegment segmentFor(long offset) {
+        LogSegment[] snapshot = segments;
+        int low = 0;
+        int high = snapshot.length - 1;
+        LogSegment found = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            LogSegment segment = snapshot[mid];
+            if (segment.baseOffset() <= offset) {
+                found = segment;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 按保留策略删除最旧的已封存段，活动段永不删除
+     */
+    public synchronized void enforceRetention() throws IOException {
+        long cutoff = config.getRetentionMs() > 0 ? System.currentTimeMillis() - config.getRetentionMs() : Long.MIN_VALUE;
+        long totalBytes = 0;
+        for (LogSegment segment : segments) {
+            totalBytes += segment.size();
+        }
+        boolean deleted = false;
+        while (segments.length > 1) {
+            LogSegment oldest = segments[0];
+            boolean expired = oldest.lastTimestamp() < cutoff;
+            boolean oversized = config.getRetentionBytes() > 0 && totalBytes > config.getRetentionBytes();
+            if (!expired && !oversized) {
+                break;
+            }
+            totalBytes -= oldest.size();
+            deleteOldest();
+            deleted = true;
+        }
+        if (deleted) {
+            conversations.trimBefore(startOffset());
+        }
+    }
+
+    /**
+     * 删除所有消息 id 都不大于 id 的已封存段，活动段永不删除；段中只有部分消息满足条件时保留整段
+     */
+    public synchronized void deleteThrough(long id) throws IOException {
+        boolean deleted = false;
+        while (segments.length > 1 && lastIdOf(segments[0]) <= id) {
+            deleteOldest();
+            deleted = true;
+        }
+        if (deleted) {
+            conversations.trimBefore(startOffset());
+        }
+    }
+
+    private long lastIdOf(LogSegment segment) {
+        if (segment.recordCount() == 0) {
+            return Long.MIN_VALUE;
+        }
+        long offset = segment.nextOffset() - 1;
+        return decode(segment.seek(offset).payload(), offset).getId();
+    }
+
+    private void deleteOldest() throws IOException {
+        LogSegment[] current = segments;
+        LogSegment oldest = current[0];
+        segments = Arrays.copyOfRange(current, 1, current.length);
+        oldest.delete();
+        log.info("Message log deleted segment {} ({} messages)", oldest.path().getFileName(), oldest.recordCount());
+    }
+
+    private void enforceRetentionQuietly() {
+        try {
+            enforceRetention();
+        } catch (Exception e) {
+            log.error("Failed to enforce message log retention", e);
+        }
+    }
+
+    public void flush() {
+        active.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        maintenance.shutdownNow();
+        for (LogSegment segment : segments) {
+            segment.close();
+        }
+    }
+
+    /**
+     * 负载格式：long 时间戳 | 发送者 | 接收者（长度 -1 表示群聊）| 内容 [| long 消息 id]，字符串均为 int 长度 + UTF-8。
+     * 消息 id 之前由偏移量充当，旧记录没有这一字段
+     */
+    static byte[] encode(Message message) {
+        byte[] sender = message.getSender().getBytes(StandardCharsets.UTF_8);
+        byte[] receiver = message.getReceiver() == null ? null : message.getReceiver().getBytes(StandardCharsets.UTF_8);
+        byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 4 + sender.length + 4 + (receiver == null ? 0 : receiver.length) + 4 + content.length
+                + (message.getId() == null ? 0 : 8);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putLong(message.getTimestamp().getTime());
+        putBytes(buffer, sender);
+        putBytes(buffer, receiver);
+        putBytes(buffer, content);
+        if (message.getId() != null) {
+            buffer.putLong(message.getId());
+        }
+        return buffer.array();
+    }
+
+    static Message decode(ByteBuffer payload, long offset) {
+        long timestamp = payload.getLong(0);
+        payload.position(8);
+        String sender = getString(payload);
+        String receiver = getString(payload);
+        String content = getString(payload);
+        Message message = new Message(sender, receiver, content, new Date(timestamp));
+        message.setId(payload.remaining() >= 8 ? payload.getLong() : offset);
+        return message;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
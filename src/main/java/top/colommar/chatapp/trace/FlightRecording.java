@@ -0,0 +1,119 @@
+package top.colommar.chatapp.trace;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 常驻的 JFR 环形录制：使用 JDK 自带的 default 配置（开销约 1%）外加本应用的消息事件，只保留最近 maxAge / maxSize 的数据。
+ * 延迟抖动时通过 jfr 端点的写操作把当前窗口转储到 chat.trace.jfr.dir，用 JDK Mission Control 或 jfr 命令分析。
+ * 端点默认不通过 HTTP 暴露；目录中只保留最近 maxDumps 个转储文件。
+ */
+@Slf4j
+@Component
+@Endpoint(id = "jfr")
+@ConditionalOnProperty(prefix = "chat.trace.jfr", name = "enabled", matchIfMissing = true)
+public class FlightRecording {
+
+    private final Path dir;
+    private final Duration maxAge;
+    private final long maxSizeBytes;
+    private final int maxDumps;
+    private Recording recording;
+
+    public FlightRecording(@Value("${chat.trace.jfr.dir:data/jfr}") String dir,
+                           @Value("${chat.trace.jfr.max-age:10m}") Duration maxAge,
+                           @Value("${chat.trace.jfr.max-size-bytes:104857600}") long maxSizeBytes,
+                           @Value("${chat.trace.jfr.max-dumps:5}") int maxDumps) {
+        this.dir = Paths.get(dir);
+        this.maxAge = maxAge;
+        this.maxSizeBytes = maxSizeBytes;
+        this.maxDumps = Math.max(1, maxDumps);
+    }
+
+    @PostConstruct
+    public void start() throws IOException, ParseException {
+        recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("chat-continuous");
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSizeBytes);
+        recording.enable(MessageHandlingEvent.class);
+        recording.enable(MessageFlushEvent.class);
+        recording.start();
+        log.info("JFR continuous recording started, keeping the last {}", maxAge);
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("name", recording.getName());
+        status.put("state", recording.getState().name());
+        status.put("maxAge", maxAge.toString());
+        status.put("maxSizeBytes", maxSizeBytes);
+        status.put("dir", dir.toAbsolutePath().toString());
+        status.put("maxDumps", maxDumps);
+        return status;
+    }
+
+    /**
+     * 把当前录制窗口转储到文件，并删除超出 maxDumps 的旧转储
+     */
+    @WriteOperation
+    public synchronized Map<String, Object> dump() throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve("chat-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".jfr");
+        recording.dump(file);
+        log.info("JFR recording dumped to {}", file);
+        pruneDumps();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("file", file.toAbsolutePath().toString());
+        result.put("bytes", Files.size(file));
+        return result;
+    }
+
+    /**
+     * 文件名带时间，按名称排序即按时间先后
+     */
+    private void pruneDumps() throws IOException {
+        List<Path> dumps;
+        try (Stream<Path> files = Files.list(dir)) {
+            dumps = files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith("chat-") && name.endsWith(".jfr");
+            }).sorted().toList();
+        }
+        for (Path old : dumps.subList(0, Math.max(0, dumps.size() - maxDumps))) {
+            Files.deleteIfExists(old);
+            log.info("Deleted old JFR dump {}", old);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
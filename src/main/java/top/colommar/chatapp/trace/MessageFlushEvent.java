@@ -0,0 +1,23 @@
+package top.colommar.chatapp.trace;
+
+import jdk.jfr.*;
+
+/**
+ * 被采样的消息从开始扇出到所有接收者的写操作都完成（数据已交给 socket）的 JFR 事件
+ */
+@Name("top.colommar.chatapp.MessageFlush")
+@Label("Message Flush")
+@Category({"ChatApp", "WebSocket"})
+@Description("被采样消息的扇出写操作全部完成")
+@StackTrace(false)
+class MessageFlushEvent extends Event {
+
+    @Label("Trace Id")
+    String traceId;
+
+    @Label("Recipients")
+    int recipients;
+
+    @Label("Failed Writes")
+    int failed;
+}
@@ -0,0 +1,46 @@
+package top.colommar.chatapp.trace;
+
+import jdk.jfr.*;
+
+/**
+ * 一个入站帧从解码到分发完成的 JFR 事件，事件时长即处理总耗时，各阶段耗时单独记录
+ */
+@Name("top.colommar.chatapp.MessageHandling")
+@Label("Message Handling")
+@Category({"ChatApp", "WebSocket"})
+@Description("一个入站 WebSocket 帧在处理器中的各阶段耗时")
+@StackTrace(false)
+class MessageHandlingEvent extends Event {
+
+    @Label("Trace Id")
+    @Description("被采样的帧才有")
+    String traceId;
+
+    @Label("Type")
+    String messageType;
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadBytes;
+
+    @Label("Decode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long decodeTime;
+
+    @Label("Persist Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long persistTime;
+
+    @Label("Fan-out Time")
+    @Description("把消息写入所有接收者出站缓冲区的耗时，不含真正写到 socket")
+    @Timespan(Timespan.NANOSECONDS)
+    long fanoutTime;
+
+    @Label("Recipients")
+    int recipients;
+
+    @Label("Outbound Size")
+    @Description("扇出写出的总字节数")
+    @DataAmount
+    long outboundBytes;
+}
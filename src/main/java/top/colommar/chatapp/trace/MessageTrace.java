@@ -0,0 +1,147 @@
+package top.colommar.chatapp.trace;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个入站帧的阶段计时，只在该连接的事件循环线程上使用
+ *
+ * 未开启 JFR 录制且未被采样时使用 NOOP，所有方法都是空操作
+ */
+public class MessageTrace {
+
+    static final MessageTrace NOOP = new MessageTrace(null, null, 0);
+
+    private String traceId;
+    private final MessageHandlingEvent event;
+    private final long start;
+    private long persistStart;
+    private long fanoutStart;
+    private FlushTracker flush;
+
+    MessageTrace(String traceId, MessageHandlingEvent event, int payloadBytes) {
+        this.traceId = traceId;
+        this.event = event;
+        this.start = System.nanoTime();
+        if (event != null) {
+            event.begin();
+            event.traceId = traceId;
+            event.payloadBytes = payloadBytes;
+        }
+    }
+
+    /**
+     * 被采样时的 trace id，否则为 null；出站消息据此带上 traceId 便于客户端关联
+     */
+    public String traceId() {
+        return traceId;
+    }
+
+    void decoded(String type, String clientTraceId) {
+        if (clientTraceId != null) {
+            traceId = clientTraceId;
+        }
+        if (event != null) {
+            event.traceId = traceId;
+            event.messageType = type;
+            event.decodeTime = System.nanoTime() - start;
+        }
+    }
+
+    public void persistStarted() {
+        if (event != null) {
+            persistStart = System.nanoTime();
+        }
+    }
+
+    public void persisted() {
+        if (event != null) {
+            event.persistTime = System.nanoTime() - persistStart;
+        }
+    }
+
+    public void fanoutStarted() {
+        if (event != null || traceId != null) {
+            fanoutStart = System.nanoTime();
+        }
+        if (traceId != null) {
+            flush = new FlushTracker(traceId);
+        }
+    }
+
+    /**
+     * 记录扇出中的一次写出；被采样时跟踪写操作完成，用于测量到 socket 的耗时
+     */
+    public void wrote(ChannelFuture future, int bytes) {
+        if (event != null) {
+            event.recipients++;
+            event.outboundBytes += bytes;
+        }
+        if (flush != null) {
+            flush.track(future);
+        }
+    }
+
+    public void fannedOut() {
+        if (event != null) {
+            event.fanoutTime = System.nanoTime() - fanoutStart;
+        }
+        if (flush != null) {
+            flush.sealed();
+        }
+    }
+
+    /**
+     * 处理结束，提交 JFR 事件
+     */
+    public void finish() {
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    /**
+     * 所有被跟踪的写操作都完成后提交 MessageFlushEvent。写完成回调可能先于扇出结束触发，
+     * pending 初始为 1，扇出结束时再减去，保证事件只在最后一个写操作完成后提交一次
+     */
+    private static final class FlushTracker implements ChannelFutureListener {
+
+        private final MessageFlushEvent event = new MessageFlushEvent();
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicInteger failed = new AtomicInteger();
+        private int recipients;
+
+        FlushTracker(String traceId) {
+            event.begin();
+            event.traceId = traceId;
+        }
+
+        void track(ChannelFuture future) {
+            recipients++;
+            pending.incrementAndGet();
+            future.addListener(this);
+        }
+
+        void sealed() {
+            event.recipients = recipients;
+            complete();
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (!future.isSuccess()) {
+                failed.incrementAndGet();
+            }
+            complete();
+        }
+
+        private void complete() {
+            if (pending.decrementAndGet() == 0) {
+                event.failed = failed.get();
+                event.commit();
+            }
+        }
+    }
+}
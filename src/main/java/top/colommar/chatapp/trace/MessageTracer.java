@@ -0,0 +1,89 @@
+package top.colommar.chatapp.trace;
+
+import jdk.jfr.EventType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import top.colommar.chatapp.admission.TokenBucket;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 为入站帧创建 MessageTrace
+ *
+ * 有 JFR 录制开启 MessageHandling 事件时，每个帧都记录阶段耗时；另按 sampleRate 采样分配 trace id。
+ * 客户端在帧中自带的 traceId 只在采样开启时采用，且全局每秒最多 clientTracesPerSecond 个，避免客户端强制追踪每一帧。
+ * 被采样的帧额外跟踪扇出写操作的完成时间，并在出站消息中带上 traceId。都不满足时返回空操作的 trace，不产生分配。
+ */
+@Component
+public class MessageTracer {
+
+    private static final EventType HANDLING_EVENT = EventType.getEventType(MessageHandlingEvent.class);
+
+    private final double sampleRate;
+    // 所有事件循环共用，访问时加锁
+    private final TokenBucket clientTraceBudget;
+    private final BooleanSupplier recordingEnabled;
+
+    @Autowired
+    public MessageTracer(@Value("${chat.trace.sample-rate:0.001}") double sampleRate,
+                         @Value("${chat.trace.client-traces-per-second:10}") double clientTracesPerSecond) {
+        this(sampleRate, clientTracesPerSecond, HANDLING_EVENT::isEnabled);
+    }
+
+    /**
+     * @param recordingEnabled 是否有录制开启了 MessageHandling 事件，测试中可固定为不录制
+     */
+    MessageTracer(double sampleRate, double clientTracesPerSecond, BooleanSupplier recordingEnabled) {
+        this.sampleRate = sampleRate;
+        this.clientTraceBudget = sampleRate > 0 && clientTracesPerSecond > 0
+                ? new TokenBucket(clientTracesPerSecond, (int) Math.ceil(clientTracesPerSecond))
+                : null;
+        this.recordingEnabled = recordingEnabled;
+    }
+
+    /**
+     * 收到帧、解码之前调用
+     *
+     * @param payloadBytes 帧负载大小
+     */
+    public MessageTrace start(int payloadBytes) {
+        String traceId = null;
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            traceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        }
+        boolean recording = recordingEnabled.getAsBoolean();
+        if (!recording && traceId == null) {
+            return MessageTrace.NOOP;
+        }
+        return new MessageTrace(traceId, recording ? new MessageHandlingEvent() : null, payloadBytes);
+    }
+
+    /**
+     * 解码完成后调用，记录解码耗时
+     *
+     * @param clientTraceId 帧中的 traceId 字段，非空字符串且未超出限额时以它为 trace id
+     * @return 后续阶段使用的 trace，客户端指定 traceId 时可能不是传入的那个
+     */
+    public MessageTrace decoded(MessageTrace trace, String type, Object clientTraceId) {
+        String id = clientTraceId instanceof String s && !s.isEmpty() && acceptClientTrace() ? s : null;
+        if (trace == MessageTrace.NOOP) {
+            if (id == null) {
+                return trace;
+            }
+            trace = new MessageTrace(id, null, 0);
+        }
+        trace.decoded(type, id);
+        return trace;
+    }
+
+    private boolean acceptClientTrace() {
+        if (clientTraceBudget == null) {
+            return false;
+        }
+        synchronized (clientTraceBudget) {
+            return clientTraceBudget.tryAcquire();
+        }
+    }
+}
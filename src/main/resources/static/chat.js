@@ -9,6 +9,7 @@ var container = document.getElementById("container");
 
 var ws; // WebSocket 对象
 var username; // 当前登录的用户名
+var reconnectDelay = 0; // 服务器要求重连时的等待时间（毫秒）
 
 // 切换到注册界面
 showRegister.addEventListener("click", function (event) {
@@ -41,16 +42,17 @@ loginForm.addEventListener("submit", function (event) {
     ws.onopen = function () {
         console.log("WebSocket 连接已打开");
         // 连接建立后，发送登录消息
+        // 不要求服务器回放全部历史，各会话的消息由消息列表按需分页拉取
         var loginMessage = {
             type: "login",
             username: loginUsername,
-            password: loginPassword
+            password: loginPassword,
+            history: false
         };
         ws.send(JSON.stringify(loginMessage));
     };
 
     ws.onmessage = function (event) {
-        console.log("Received data:", event.data); // 调试日志
         var data;
         try {
             data = JSON.parse(event.data);
@@ -65,19 +67,43 @@ loginForm.addEventListener("submit", function (event) {
             handleRegisterResponse(data);
         } else if (data.type === "message") {
             displayMessage(data);
+        } else if (data.type === "history") {
+            displayHistory(data);
+        } else if (data.type === "file") {
+            displayFile(data);
+        } else if (data.type === "fileList") {
+            displayFileList(data.files);
+        } else if (data.type === "thumbnail") {
+            showThumbnail(data);
         } else if (data.type === "userList") {
             updateUserList(data.users);
         } else if (data.type === "userStatusUpdate") {
             updateUserStatus(data.users);
+        } else if (data.type === "typing") {
+            showTyping(data);
+        } else if (data.type === "read") {
+            showReadReceipt(data);
+        } else if (data.type === "conversations") {
+            loadConversations(data.conversations);
         } else if (data.type === "error") {
             alert("错误：" + data.message);
-        } else if (data.type === "history") {
-            loadChatHistory(data.messages);
+        } else if (data.type === "reconnect") {
+            reconnectDelay = data.retryAfterMs || 3000;
         }
     };
 
     ws.onclose = function () {
         console.log("WebSocket 连接已关闭");
+        if (reconnectDelay > 0) {
+            // 服务器滚动重启，稍后用表单中保留的用户名密码重新登录
+            var delay = reconnectDelay;
+            reconnectDelay = 0;
+            document.getElementById("currentUsername").textContent = "当前用户: " + username + "（重连中…）";
+            setTimeout(function () {
+                loginForm.requestSubmit();
+            }, delay);
+            return;
+        }
         alert("WebSocket 连接已关闭。");
         // 重置界面
         container.style.display = "none";
@@ -165,16 +191,144 @@ sendButton.addEventListener("click", function () {
         var message = {
             type: "message",
             content: content,
-            sender: username,
-            receiver: receiver,
-            timestamp: new Date().getTime() // 使用当前时间的时间戳
+            receiver: receiver
         };
 
         ws.send(JSON.stringify(message));
         messageInput.value = "";
+        sendTyping("idle");
     }
 });
 
+// 正在输入：每次输入都上报，服务器按会话合并；停止输入 3 秒后上报 idle
+var typingIdleTimer = null;
+messageInput.addEventListener("input", function () {
+    sendTyping(messageInput.value ? "typing" : "idle");
+    clearTimeout(typingIdleTimer);
+    typingIdleTimer = setTimeout(function () {
+        sendTyping("idle");
+    }, 3000);
+});
+
+function sendTyping(state) {
+    if (!ws || ws.readyState !== WebSocket.OPEN) {
+        return;
+    }
+    ws.send(JSON.stringify({
+        type: "typing",
+        receiver: receiverSelect.value || null,
+        state: state
+    }));
+}
+
+// 已读回执：按会话记录读到的最新时间戳，短暂延迟后一次性上报，历史回放时也只发一条
+var pendingReads = {};
+var readFlushTimer = null;
+
+function markRead(data) {
+    if (data.sender === username || document.hidden) {
+        return;
+    }
+    // 私聊会话以对方用户名标识，群聊为空串
+    var conversation = data.receiver ? data.sender : "";
+    setUnread(conversation, 0);
+    pendingReads[conversation] = Math.max(pendingReads[conversation] || 0, data.timestamp);
+    if (readFlushTimer === null) {
+        readFlushTimer = setTimeout(flushReads, 500);
+    }
+}
+
+function flushReads() {
+    readFlushTimer = null;
+    if (!ws || ws.readyState !== WebSocket.OPEN) {
+        return;
+    }
+    Object.keys(pendingReads).forEach(function (conversation) {
+        ws.send(JSON.stringify({
+            type: "read",
+            receiver: conversation || null,
+            timestamp: pendingReads[conversation]
+        }));
+    });
+    pendingReads = {};
+}
+
+// 会话摘要：对方用户名（群聊为空串） -> 登录时服务端下发的最后一条消息与未读数
+var conversationSummaries = {};
+var currentUsers = {};
+
+function loadConversations(conversations) {
+    conversationSummaries = {};
+    conversations.forEach(function (conversation) {
+        conversationSummaries[conversation.receiver || ""] = conversation;
+    });
+    updateUserList(currentUsers);
+}
+
+function setUnread(conversation, unread) {
+    var summary = conversationSummaries[conversation];
+    if (!summary || summary.unread === unread) {
+        return;
+    }
+    summary.unread = unread;
+    updateUserList(currentUsers);
+}
+
+/**
+ * 未读数角标，悬停显示最后一条消息；没有未读时返回 null
+ */
+function unreadBadge(conversation) {
+    var summary = conversationSummaries[conversation];
+    if (!summary || !summary.unread) {
+        return null;
+    }
+    var badge = document.createElement("span");
+    badge.classList.add("unread-badge");
+    badge.textContent = summary.unread > 99 ? "99+" : summary.unread;
+    badge.title = summary.lastSender + ": " + summary.lastContent;
+    return badge;
+}
+
+/**
+ * 显示正在输入提示，只关心群聊和发给自己的私聊
+ */
+var typingUsers = {};
+var lastReadReceipt = ""; // 没有人在输入时显示最近一次已读回执
+
+function showTyping(data) {
+    if (data.receiver && data.receiver !== username) {
+        return;
+    }
+    if (data.state === "typing") {
+        typingUsers[data.sender] = Date.now();
+    } else {
+        delete typingUsers[data.sender];
+    }
+    renderTyping();
+}
+
+function renderTyping() {
+    var now = Date.now();
+    var names = Object.keys(typingUsers).filter(function (name) {
+        // idle 丢失时 5 秒后自动消失
+        return now - typingUsers[name] < 5000;
+    });
+    document.getElementById("typingIndicator").textContent = names.length ? names.join("、") + " 正在输入…" : lastReadReceipt;
+}
+
+setInterval(renderTyping, 1000);
+
+/**
+ * 显示私聊对方的已读位置
+ */
+function showReadReceipt(data) {
+    if (data.receiver !== username) {
+        return;
+    }
+    lastReadReceipt = data.sender + " 已读 • " + dayjs(data.timestamp).format('YYYY-MM-DD HH:mm');
+    renderTyping();
+}
+
 // 按下回车键发送消息
 messageInput.addEventListener("keypress", function (event) {
     if (event.key === "Enter") {
@@ -182,6 +336,49 @@ messageInput.addEventListener("keypress", function (event) {
     }
 });
 
+// 处理文件上传
+var uploadButton = document.getElementById("uploadButton");
+var fileInput = document.getElementById("fileInput");
+var uploadStatus = document.getElementById("uploadStatus");
+uploadButton.addEventListener("click", function () {
+    var file = fileInput.files[0];
+    if (!file) {
+        alert("请选择一个文件！");
+        return;
+    }
+
+    var formData = new FormData();
+    var receiverValue = receiverSelect.value;
+    formData.append("file", file);
+    formData.append("sender", username);
+    var receiver = receiverValue ? receiverValue : null; // 如果没有选择接收者，设置为 null
+    formData.append("receiver", receiver);
+    // formData.append("timestamp", ti)
+    // 可选：添加接收者
+    // formData.append("receiver", "其他用户名");
+
+    fetch("http://127.0.0.1:8080/api/chatfiles/upload", {
+        method: "POST",
+        body: formData
+    })
+        .then(response => {
+            if (!response.ok) {
+                return response.text().then(text => { throw new Error(text) });
+            }
+            return response.text();
+        })
+        .then(fileUrl => {
+            console.log("文件上传成功:", fileUrl);
+            uploadStatus.innerText = "文件上传成功";
+            // 清空文件输入
+            fileInput.value = "";
+        })
+        .catch(error => {
+            console.error("文件上传失败:", error);
+            uploadStatus.innerText = "文件上传失败: " + error.message;
+        });
+});
+
 /**
  * 处理登录响应
  */
@@ -191,6 +388,8 @@ function handleLoginResponse(data) {
         loginContainer.classList.remove("active");
         container.style.display = "flex";
         username = document.getElementById("loginUsername").value.trim(); // 设置为全局变量
+        // 重连后清空已加载的消息重新分页拉取，补上断线期间的消息
+        resetMessageView();
         // 更新当前用户名显示
         document.getElementById("currentUsername").textContent = "当前用户: " + username;
     } else {
@@ -212,82 +411,595 @@ function handleRegisterResponse(data) {
     }
 }
 
+// ===== 消息列表 =====
+// 按会话分别保存消息，当前只显示所选会话（群聊或与某人的私聊）。
+// 列表是虚拟的：只为可视区及其上下一段范围创建 DOM 节点，其余部分用上下两个占位块撑出高度；
+// 行高先按估计值排布，渲染后按实际高度修正。收到的消息和历史页先入队，每个动画帧统一更新一次 DOM。
+// 滚动到接近顶部时用 history 请求按 id 向前分页，取回的消息插到前面并保持可视位置不跳动。
+
+var HISTORY_PAGE_SIZE = 50;
+var HISTORY_TIMEOUT_MS = 5000; // 历史请求超时（如被限流）后允许重试
+var ESTIMATED_ROW_HEIGHT = 72; // 未渲染过的行的估计高度（像素）
+var OVERSCAN_PX = 600; // 可视区上下额外渲染的范围，快速滚动时不露白
+var LOAD_MORE_THRESHOLD_PX = 300; // 距顶部不足该距离时加载更早的消息
+var STICK_TO_BOTTOM_PX = 40; // 距底部不足该距离视为停在底部，新消息到达时跟随滚动
+
+var messagesList = document.getElementById("messages");
+var topSpacer = document.createElement("div");
+var bottomSpacer = document.createElement("div");
+topSpacer.className = "message-spacer";
+bottomSpacer.className = "message-spacer";
+messagesList.append(topSpacer, bottomSpacer);
+
+// 会话（对方用户名，群聊为空串） -> { items: [{data, height, top, fresh}], ids, hasMore, loading, ... }
+var conversationMessages = {};
+var currentConversation = "";
+var renderedRows = new Map(); // 行数据 -> 已创建的行节点，只含当前渲染窗口内的行
+var pendingFrames = []; // 等待下一帧处理的消息与历史页
+var frameRequested = false;
+var scrollToBottomOnRender = true;
+
+messagesList.addEventListener("scroll", scheduleFrame, { passive: true });
+window.addEventListener("resize", scheduleFrame);
+// 页面隐藏时不发已读回执，切回来后补上
+document.addEventListener("visibilitychange", scheduleFrame);
+receiverSelect.addEventListener("change", function () {
+    selectConversation(receiverSelect.value);
+});
+
 /**
- * 显示消息
+ * 收到一条消息，放到下一帧统一处理
  */
 function displayMessage(data) {
-    console.log("Display message:", data); // 调试日志
-    var messagesList = document.getElementById("messages");
-    var newMessage = document.createElement("div"); // 使用 div 而非 li
-    var sender = data.sender;
-    var content = data.content;
-    var receiver = data.receiver;
-    var timestamp = data.timestamp; // 获取时间戳
-
-    // 检查 timestamp 是否有效
-    if (typeof timestamp !== 'number' || isNaN(timestamp)) {
-        console.error("Invalid timestamp:", timestamp);
+    pendingFrames.push({ kind: "message", data: data });
+    scheduleFrame();
+}
+
+/**
+ * 收到一页历史消息，放到下一帧统一处理
+ */
+function displayHistory(data) {
+    pendingFrames.push({ kind: "history", data: data });
+    scheduleFrame();
+}
+
+/**
+ * 切换当前显示的会话，空串为群聊
+ */
+function selectConversation(conversation) {
+    conversation = conversation || "";
+    receiverSelect.value = conversation;
+    if (conversation === currentConversation) {
+        return;
+    }
+    currentConversation = conversation;
+    clearRenderedRows();
+    scrollToBottomOnRender = true;
+    scheduleFrame();
+}
+
+/**
+ * 登录（含重连）后清空所有会话，当前会话随后从最新一页重新加载
+ */
+function resetMessageView() {
+    conversationMessages = {};
+    pendingFrames = [];
+    clearRenderedRows();
+    scrollToBottomOnRender = true;
+    scheduleFrame();
+}
+
+function scheduleFrame() {
+    if (!frameRequested) {
+        frameRequested = true;
+        requestAnimationFrame(flushFrame);
+    }
+}
+
+/**
+ * 每帧一次：把排队的消息和历史页并入各会话，再重新渲染当前会话
+ */
+function flushFrame() {
+    frameRequested = false;
+    var view = getConversation(currentConversation);
+    // 先记下可视区顶部对应的行，并入消息、修正行高后据此恢复滚动位置。
+    // 只有本帧确实追加了当前会话的消息、且此前停在底部时才跟随到底部，单纯的滚动帧不能把视图拉回底部
+    var anchor = captureAnchor(view);
+    var wasAtBottom = isAtBottom();
+    var followBottom = scrollToBottomOnRender;
+    var unreadChanged = false;
+
+    var frames = pendingFrames;
+    pendingFrames = [];
+    frames.forEach(function (frame) {
+        if (frame.kind === "history") {
+            prependHistory(frame.data);
+            return;
+        }
+        var data = frame.data;
+        var conversation = conversationOf(data);
+        if (!appendMessage(getConversation(conversation), data)) {
+            return;
+        }
+        if (conversation !== currentConversation) {
+            if (data.sender !== username) {
+                bumpUnread(conversation, data);
+                unreadChanged = true;
+            }
+        } else if (data.sender === username || wasAtBottom) {
+            // 自己发出的消息总是滚动到底部，别人的消息只在原本停在底部时跟随
+            followBottom = true;
+        }
+    });
+    if (unreadChanged) {
+        updateUserList(currentUsers);
+    }
+
+    renderView(view, followBottom ? null : anchor);
+    scrollToBottomOnRender = false;
+
+    if (isAtBottom()) {
+        markLatestRead(view);
+    }
+    if (messagesList.scrollTop < LOAD_MORE_THRESHOLD_PX) {
+        loadOlderMessages(currentConversation);
+    }
+}
+
+function getConversation(conversation) {
+    var view = conversationMessages[conversation];
+    if (!view) {
+        view = {
+            items: [],
+            ids: {},
+            hasMore: true, // 还没拉过历史，假定服务器上有更早的消息
+            loading: false,
+            loadingSince: 0,
+            readTimestamp: 0,
+            dirty: false,
+            totalHeight: 0
+        };
+        conversationMessages[conversation] = view;
+    }
+    return view;
+}
+
+/**
+ * 消息所属的会话：私聊为对方用户名，群聊为空串
+ */
+function conversationOf(data) {
+    if (!data.receiver) {
+        return "";
+    }
+    return data.sender === username ? data.receiver : data.sender;
+}
+
+/**
+ * 比较两个消息 id。id 是可能超出 JS 安全整数范围的十进制字符串，先比长度再按字典序比较
+ */
+function compareIds(a, b) {
+    a = String(a);
+    b = String(b);
+    if (a.length !== b.length) {
+        return a.length - b.length;
+    }
+    return a < b ? -1 : a > b ? 1 : 0;
+}
+
+function newItem(data, fresh) {
+    return { data: data, height: ESTIMATED_ROW_HEIGHT, top: 0, fresh: fresh };
+}
+
+/**
+ * 追加一条实时消息，重复或无效的消息返回 false
+ */
+function appendMessage(view, data) {
+    if (typeof data.timestamp !== "number" || isNaN(data.timestamp)) {
+        console.error("Invalid timestamp:", data.timestamp);
+        return false;
+    }
+    if (view.ids[data.id]) {
+        return false;
+    }
+    view.ids[data.id] = true;
+    var item = newItem(data, true);
+    var items = view.items;
+    if (items.length && compareIds(items[items.length - 1].data.id, data.id) > 0) {
+        // 极少数情况下消息乱序到达，按 id 插入
+        var index = items.length - 1;
+        while (index > 0 && compareIds(items[index - 1].data.id, data.id) > 0) {
+            index--;
+        }
+        items.splice(index, 0, item);
+    } else {
+        items.push(item);
+    }
+    view.dirty = true;
+    return true;
+}
+
+/**
+ * 把一页历史插到会话前面，跳过已有的消息
+ */
+function prependHistory(data) {
+    var view = getConversation(data.receiver || "");
+    view.loading = false;
+    view.hasMore = data.hasMore;
+    var older = [];
+    data.messages.forEach(function (message) {
+        if (!view.ids[message.id]) {
+            view.ids[message.id] = true;
+            older.push(newItem(message, false));
+        }
+    });
+    if (!older.length) {
         return;
     }
+    view.items = older.concat(view.items);
+    view.dirty = true;
+}
 
-    // 将时间戳转换为日期对象
-    var date = dayjs(timestamp);
-    console.log("Parsed date:", date.format('YYYY-MM-DD HH:mm')); // 调试日志
+/**
+ * 以当前最早一条消息的 id 为界请求上一页历史，同一会话同时只有一个请求在途
+ */
+function loadOlderMessages(conversation) {
+    var view = getConversation(conversation);
+    var now = Date.now();
+    if (!view.hasMore || (view.loading && now - view.loadingSince < HISTORY_TIMEOUT_MS)) {
+        return;
+    }
+    if (!username || !ws || ws.readyState !== WebSocket.OPEN) {
+        return;
+    }
+    view.loading = true;
+    view.loadingSince = now;
+    var request = {
+        type: "history",
+        receiver: conversation || null,
+        limit: HISTORY_PAGE_SIZE
+    };
+    if (view.items.length) {
+        request.before = view.items[0].data.id;
+    }
+    ws.send(JSON.stringify(request));
+}
 
-    // 格式化日期时间字符串，例如 "2024-11-06 09:00"
-    var formattedTime = date.format('YYYY-MM-DD HH:mm');
+/**
+ * 其他会话收到新消息时累加未读数
+ */
+function bumpUnread(conversation, data) {
+    var summary = conversationSummaries[conversation];
+    if (!summary) {
+        summary = conversationSummaries[conversation] = { receiver: conversation || null, unread: 0 };
+    }
+    summary.unread = (summary.unread || 0) + 1;
+    summary.lastSender = data.sender;
+    summary.lastContent = data.content;
+}
+
+/**
+ * 停在底部时把会话中别人发来的最后一条消息标记为已读
+ */
+function markLatestRead(view) {
+    if (document.hidden) {
+        return;
+    }
+    for (var i = view.items.length - 1; i >= 0; i--) {
+        var data = view.items[i].data;
+        if (data.sender !== username) {
+            if (data.timestamp > view.readTimestamp) {
+                view.readTimestamp = data.timestamp;
+                markRead(data);
+            }
+            return;
+        }
+    }
+}
+
+function isAtBottom() {
+    return messagesList.scrollHeight - messagesList.scrollTop - messagesList.clientHeight < STICK_TO_BOTTOM_PX;
+}
 
-    var messageHtml = "";
+/**
+ * 按各行高度重新计算每行的顶部位置
+ */
+function layout(view) {
+    if (!view.dirty) {
+        return;
+    }
+    var top = 0;
+    view.items.forEach(function (item) {
+        item.top = top;
+        top += item.height;
+    });
+    view.totalHeight = top;
+    view.dirty = false;
+}
+
+/**
+ * 位置 y 所在行的下标（二分查找）
+ */
+function indexAt(view, y) {
+    var items = view.items;
+    var low = 0;
+    var high = items.length - 1;
+    while (low < high) {
+        var mid = (low + high + 1) >> 1;
+        if (items[mid].top <= y) {
+            low = mid;
+        } else {
+            high = mid - 1;
+        }
+    }
+    return low;
+}
+
+function captureAnchor(view) {
+    if (!view.items.length) {
+        return null;
+    }
+    layout(view);
+    var scrollTop = messagesList.scrollTop;
+    var item = view.items[indexAt(view, scrollTop)];
+    return { item: item, offset: scrollTop - item.top };
+}
+
+/**
+ * 渲染可视窗口内的行并恢复滚动位置。实际行高与估计不符时重新排布再渲染一次
+ */
+function renderView(view, anchor) {
+    var targetTop = 0;
+    for (var pass = 0; pass < 2; pass++) {
+        layout(view);
+        targetTop = anchor
+            ? anchor.item.top + anchor.offset
+            : Math.max(0, view.totalHeight - messagesList.clientHeight);
+        renderWindow(view, targetTop);
+        if (!measureRows()) {
+            break;
+        }
+        view.dirty = true;
+    }
+    layout(view);
+    updateSpacers(view);
+    messagesList.scrollTop = anchor ? anchor.item.top + anchor.offset : messagesList.scrollHeight;
+}
+
+/**
+ * 只保留 [targetTop - OVERSCAN_PX, targetTop + 可视高度 + OVERSCAN_PX] 范围内的行节点
+ */
+function renderWindow(view, targetTop) {
+    var items = view.items;
+    if (!items.length) {
+        clearRenderedRows();
+        updateSpacers(view);
+        return;
+    }
+    var start = indexAt(view, targetTop - OVERSCAN_PX);
+    var end = indexAt(view, targetTop + messagesList.clientHeight + OVERSCAN_PX);
+
+    var visible = new Set(items.slice(start, end + 1));
+    renderedRows.forEach(function (row, item) {
+        if (!visible.has(item)) {
+            row.remove();
+            renderedRows.delete(item);
+        }
+    });
+
+    // 按顺序放置各行，已在正确位置的节点不移动
+    var cursor = topSpacer.nextSibling;
+    for (var i = start; i <= end; i++) {
+        var row = renderedRows.get(items[i]);
+        if (!row) {
+            row = createRow(items[i]);
+            renderedRows.set(items[i], row);
+        }
+        if (row === cursor) {
+            cursor = cursor.nextSibling;
+        } else {
+            messagesList.insertBefore(row, cursor);
+        }
+    }
+    view.renderStart = start;
+    view.renderEnd = end;
+    updateSpacers(view);
+}
 
-    if (receiver && (receiver === username || sender === username)) {
-        // 私聊消息
-        if (sender === username) {
+/**
+ * 读取已渲染行的实际高度，有变化时返回 true
+ */
+function measureRows() {
+    var changed = false;
+    renderedRows.forEach(function (row, item) {
+        var height = row.offsetHeight;
+        if (height && height !== item.height) {
+            item.height = height;
+            changed = true;
+        }
+    });
+    return changed;
+}
+
+function updateSpacers(view) {
+    var items = view.items;
+    if (!items.length || !renderedRows.size) {
+        topSpacer.style.height = "0px";
+        bottomSpacer.style.height = "0px";
+        return;
+    }
+    var first = items[view.renderStart];
+    var last = items[view.renderEnd];
+    topSpacer.style.height = first.top + "px";
+    bottomSpacer.style.height = (view.totalHeight - last.top - last.height) + "px";
+}
+
+function clearRenderedRows() {
+    renderedRows.forEach(function (row) {
+        row.remove();
+    });
+    renderedRows.clear();
+    topSpacer.style.height = "0px";
+    bottomSpacer.style.height = "0px";
+}
+
+/**
+ * 创建一行消息节点。内容一律作为文本插入
+ */
+function createRow(item) {
+    var data = item.data;
+    var own = data.sender === username;
+    var row = document.createElement("div");
+    row.className = "message-row";
+
+    var message = document.createElement("div");
+    message.className = "message " + (data.receiver ? "private" : "group") + (own ? " sent" : " received");
+    if (item.fresh) {
+        // 只有实时到达的消息播放淡入动画，滚动时重新创建的行不再播放
+        message.classList.add("incoming");
+        item.fresh = false;
+    }
+
+    var content = document.createElement("div");
+    content.className = "message-content";
+    var text = document.createElement("div");
+    text.className = "message-text";
+    text.textContent = data.content;
+    var info = document.createElement("div");
+    info.className = "message-info";
+
+    var formattedTime = dayjs(data.timestamp).format('YYYY-MM-DD HH:mm');
+    if (data.receiver) {
+        if (own) {
             // 自己发送的私聊消息
-            newMessage.className = "message private sent";
-            messageHtml = `<div class="message-content">
-                <div class="message-text">${content}</div>
-                <div class="message-info">你悄悄对 <strong>${receiver}</strong> 说 • ${formattedTime}</div>
-            </div>`;
+            info.append("你悄悄对 ", strong(data.receiver), " 说 • " + formattedTime);
         } else {
             // 别人发送给你的私聊消息
-            newMessage.className = "message private received";
-            messageHtml = `<div class="message-content">
-                <div class="message-text">${content}</div>
-                <div class="message-info"><strong>${sender}</strong> 悄悄对你说 • ${formattedTime}</div>
-            </div>`;
+            info.append(strong(data.sender), " 悄悄对你说 • " + formattedTime);
         }
+    } else if (own) {
+        // 自己发送的群聊消息
+        info.append("你 • " + formattedTime);
     } else {
-        if (sender === username) {
-            // 自己发送的群聊消息
-            newMessage.className = "message group sent";
-            messageHtml = `<div class="message-content">
-                <div class="message-text">${content}</div>
-                <div class="message-info">你 • ${formattedTime}</div>
-            </div>`;
-        } else {
-            // 别人发送的群聊消息
-            newMessage.className = "message group received";
-            messageHtml = `<div class="message-content">
-                <div class="message-text">${content}</div>
-                <div class="message-info"><strong>${sender}</strong> • ${formattedTime}</div>
-            </div>`;
-        }
+        // 别人发送的群聊消息
+        info.append(strong(data.sender), " • " + formattedTime);
     }
-    newMessage.innerHTML = messageHtml;
-    messagesList.appendChild(newMessage);
+
+    content.append(text, info);
+    message.appendChild(content);
+    row.appendChild(message);
+    return row;
+}
+
+function strong(text) {
+    var element = document.createElement("strong");
+    element.textContent = text;
+    return element;
+}
+
+/**
+ * 显示文件消息
+ */
+function displayFile(data) {
+    console.log("Display file:", data); // 调试日志
+    var fileListItems = document.getElementById("fileListItems");
+    var newFileItem = document.createElement("li");
+    newFileItem.className = "file-item";
+
+    var fileLink = document.createElement("a");
+    fileLink.href = data.fileUrl;
+    fileLink.innerText = data.fileName;
+    fileLink.download = data.fileName;
+    fileLink.target = "_blank"; // 在新标签页打开
+
+    newFileItem.appendChild(fileLink);
+    newFileItem.innerHTML += ` (由 ${data.sender} 上传 • ${dayjs(data.timestamp).format('YYYY-MM-DD HH:mm')})`;
+
+    fileListItems.appendChild(newFileItem);
     // 滚动到底部
-    messagesList.scrollTop = messagesList.scrollHeight;
+    fileListItems.scrollTop = fileListItems.scrollHeight;
+}
+
+/**
+ * 显示文件列表
+ */
+var currentFiles = [];
+
+function displayFileList(files) {
+    console.log("Display file list:", files); // 调试日志
+    currentFiles = files;
+    var fileListItems = document.getElementById("fileListItems");
+    fileListItems.innerHTML = ""; // 清空当前文件列表
+
+    files.forEach(function (file) {
+        var fileItem = document.createElement("li");
+        fileItem.className = "file-item";
+
+        var fileLink = document.createElement("a");
+        fileLink.href = `http://127.0.0.1:8080/api/chatfiles/download/${file.id}`;
+        fileLink.innerText = file.fileName;
+        fileLink.download = file.fileName;
+        fileLink.target = "_blank"; // 在新标签页打开
+
+        fileItem.appendChild(fileLink);
+
+        // 图片显示缩略图，点击下载原图
+        if (file.thumbnailUrl) {
+            var thumbnail = document.createElement("img");
+            thumbnail.className = "file-thumbnail";
+            thumbnail.src = "http://127.0.0.1:8080" + file.thumbnailUrl;
+            thumbnail.alt = file.fileName;
+            thumbnail.loading = "lazy";
+            fileLink.prepend(thumbnail);
+        }
+
+        // 如果 receiver 是 null 或 undefined，则显示为 "所有人"
+        const receiverDisplay = file.receiver === "null" ? "所有人" : file.receiver;
+
+        fileItem.innerHTML += ` (由 <strong>${file.sender}</strong> 上传给 <strong>${receiverDisplay}</strong> • ${dayjs(file.timestamp).format('YYYY-MM-DD HH:mm')})`;
+
+        fileListItems.appendChild(fileItem);
+    });
+}
+
+/**
+ * 缩略图生成完成：为文件列表中对应的文件换上缩略图
+ */
+function showThumbnail(data) {
+    var file = currentFiles.find(function (f) {
+        return String(f.id) === data.id;
+    });
+    if (file) {
+        file.thumbnailUrl = data.thumbnailUrl;
+        displayFileList(currentFiles);
+    }
 }
 
+
+
 /**
  * 更新用户列表显示
  * @param {Object} users - 用户名与状态的映射
  */
 function updateUserList(users) {
     console.log("Updating user list with users:", users); // 调试日志
+    currentUsers = users;
     var userList = document.getElementById("userListItems");
     userList.innerHTML = ""; // 清空当前列表
 
+    // 群聊入口，点击切回群发
+    var groupItem = document.createElement("li");
+    var groupText = document.createElement("span");
+    groupText.textContent = "群聊";
+    groupText.addEventListener("click", function () {
+        selectConversation("");
+    });
+    groupItem.appendChild(groupText);
+    var groupBadge = unreadBadge("");
+    if (groupBadge) {
+        groupItem.appendChild(groupBadge);
+    }
+    userList.appendChild(groupItem);
+
     for (var user in users) {
         if (user === username) continue; // 不显示自己
 
@@ -311,10 +1023,14 @@ function updateUserList(users) {
         userNameText.textContent = user;
         userItem.appendChild(userNameText);
 
-        // 添加点击事件，点击用户名自动选择接收者
+        var badge = unreadBadge(user);
+        if (badge) {
+            userItem.appendChild(badge);
+        }
+
+        // 添加点击事件，点击用户名自动选择接收者并切换到与其的私聊
         userNameText.addEventListener("click", function () {
-            receiverSelect.value = this.textContent;
-            console.log("Selected receiver:", this.textContent); // 调试日志
+            selectConversation(this.textContent);
         });
 
         userList.appendChild(userItem);
@@ -353,18 +1069,6 @@ function populateReceiverSelect(users) {
         option.textContent = user + (status === "online" ? " (在线)" : " (离线)");
         receiverSelect.appendChild(option);
     }
-}
-
-/**
- * 加载聊天历史
- * @param {Array} messages - 聊天消息数组
- */
-function loadChatHistory(messages) {
-    console.log("Loading chat history:", messages); // 调试日志
-    var messagesList = document.getElementById("messages");
-    messagesList.innerHTML = ""; // 清空当前消息列表
-
-    messages.forEach(function (message) {
-        displayMessage(message);
-    });
+    // 重建选项会丢失选择，恢复为当前会话
+    receiverSelect.value = currentConversation;
 }
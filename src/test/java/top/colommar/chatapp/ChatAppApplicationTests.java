@@ -2,8 +2,11 @@ package top.colommar.chatapp;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 
-@SpringBootTest
+@SpringBootTest(properties = {"chat.server.port=0", "chat.storage.log.dir=target/test-messages",
+        "chat.storage.archive.dir=target/test-archive"})
+@ActiveProfiles("local")
 class ChatAppApplicationTests {
 
     @Test
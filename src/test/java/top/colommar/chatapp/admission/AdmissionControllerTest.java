@@ -0,0 +1,94 @@
+package top.colommar.chatapp.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultEventLoopGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private DefaultEventLoopGroup eventLoops;
+    private AdmissionController admission;
+
+    @BeforeEach
+    void setUp() {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setSampleIntervalMs(10);
+        properties.setMaxPersistLatencyMs(100);
+        admission = new AdmissionController(properties, new SimpleMeterRegistry());
+        eventLoops = new DefaultEventLoopGroup(1);
+        admission.monitor(eventLoops);
+    }
+
+    @AfterEach
+    void tearDown() {
+        admission.close();
+        eventLoops.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 远多于线程数的并发写入同时进行，只要每次都很快完成就不算过载
+     */
+    @Test
+    void manyConcurrentFastPersistsDoNotTrip() throws Exception {
+        AtomicBoolean tripped = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+        for (int i = 0; i < 64; i++) {
+            Thread writer = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    long startedAt = admission.persistStarted();
+                    sleep(1);
+                    admission.persistFinished(startedAt);
+                    if (admission.isOverloaded()) {
+                        tripped.set(true);
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertFalse(tripped.get());
+    }
+
+    /**
+     * 存储卡住时持久化迟迟不完成，持续超过阈值后进入过载，完成并恢复正常后解除
+     */
+    @Test
+    void sustainedSlowPersistsTripAndRecover() throws Exception {
+        long startedAt = admission.persistStarted();
+        assertTrue(waitFor(true, 2000));
+        admission.persistFinished(startedAt);
+        assertTrue(waitFor(false, 2000));
+    }
+
+    private boolean waitFor(boolean overloaded, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (System.nanoTime() < deadline) {
+            if (admission.isOverloaded() == overloaded) {
+                return true;
+            }
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
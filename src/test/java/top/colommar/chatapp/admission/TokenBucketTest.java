@@ -0,0 +1,41 @@
+package top.colommar.chatapp.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenRejects() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+    }
+
+    @Test
+    void refillsAtConfiguredRateUpToBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            bucket.tryAcquire(0);
+        }
+        // 100ms 补充 1 个
+        assertFalse(bucket.tryAcquire(SECOND / 20));
+        assertTrue(bucket.tryAcquire(SECOND / 10));
+        assertFalse(bucket.tryAcquire(SECOND / 10));
+
+        // 闲置很久也最多积攒 burst 个
+        long later = 60 * SECOND;
+        int granted = 0;
+        while (bucket.tryAcquire(later)) {
+            granted++;
+        }
+        assertEquals(3, granted);
+    }
+}
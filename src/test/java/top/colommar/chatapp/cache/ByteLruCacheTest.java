@@ -0,0 +1,38 @@
+package top.colommar.chatapp.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteLruCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsedWhenOverBudget() {
+        ByteLruCache<String> cache = new ByteLruCache<>(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        // 访问 a 后，b 成为最久未使用
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[40]);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.totalBytes());
+        assertEquals(3, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    void replacingEntryUpdatesSizeAndOversizedEntriesAreSkipped() {
+        ByteLruCache<String> cache = new ByteLruCache<>(100);
+        cache.put("a", new byte[40]);
+        cache.put("a", new byte[10]);
+        assertEquals(10, cache.totalBytes());
+
+        cache.put("big", new byte[60]);
+        assertNull(cache.get("big"));
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,79 @@
+package top.colommar.chatapp.event;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventCoalescerTest {
+
+    private final List<String> emitted = new ArrayList<>();
+    private final AtomicInteger superseded = new AtomicInteger();
+    private EmbeddedChannel channel;
+    private EventCoalescer<String> coalescer;
+
+    @BeforeEach
+    void setUp() {
+        channel = new EmbeddedChannel();
+        channel.freezeTime();
+        coalescer = new EventCoalescer<>(channel.eventLoop(), 100, emitted::add, superseded::incrementAndGet);
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    private void advance(long millis) {
+        channel.advanceTimeBy(millis, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+    }
+
+    @Test
+    void firstEventIsImmediateAndLatestWinsWithinWindow() {
+        coalescer.offer("bob", "t1");
+        assertEquals(List.of("t1"), emitted);
+
+        coalescer.offer("bob", "t2");
+        coalescer.offer("bob", "t3");
+        coalescer.offer("bob", "idle");
+        assertEquals(List.of("t1"), emitted);
+
+        advance(100);
+        assertEquals(List.of("t1", "idle"), emitted);
+        assertEquals(2, superseded.get());
+
+        // 窗口内再无新事件，下一个窗口结束后不再发出
+        advance(100);
+        assertEquals(List.of("t1", "idle"), emitted);
+        coalescer.offer("bob", "t4");
+        assertEquals(List.of("t1", "idle", "t4"), emitted);
+    }
+
+    @Test
+    void keysAreCoalescedIndependently() {
+        coalescer.offer("bob", "b1");
+        coalescer.offer("carol", "c1");
+        coalescer.offer("bob", "b2");
+        assertEquals(List.of("b1", "c1"), emitted);
+
+        advance(100);
+        assertEquals(List.of("b1", "c1", "b2"), emitted);
+    }
+
+    @Test
+    void cancelDropsPendingEvents() {
+        coalescer.offer("bob", "t1");
+        coalescer.offer("bob", "t2");
+        coalescer.cancel();
+        advance(100);
+        assertEquals(List.of("t1"), emitted);
+    }
+}
@@ -0,0 +1,72 @@
+package top.colommar.chatapp.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeTest {
+
+    @Test
+    void encodesTimestampAndNode() {
+        long before = System.currentTimeMillis();
+        long id = new Snowflake(37).nextId();
+        long after = System.currentTimeMillis();
+
+        long timestamp = (id >>> (Snowflake.NODE_BITS + Snowflake.SEQUENCE_BITS)) + Snowflake.EPOCH;
+        assertEquals(37, (id >>> Snowflake.SEQUENCE_BITS) & Snowflake.MAX_NODE);
+        assertTrue(timestamp >= before);
+        // 同一毫秒内序号用完时会借用后续毫秒，这里只生成一个，不会超前
+        assertTrue(timestamp <= after);
+        assertThrows(IllegalArgumentException.class, () -> new Snowflake(Snowflake.MAX_NODE + 1));
+    }
+
+    @Test
+    void strictlyIncreasingAndUniqueAcrossThreads() throws Exception {
+        Snowflake snowflake = new Snowflake(1);
+        Set<Long> all = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < 4; t++) {
+                // 每个线程返回自己看到的逆序次数，在主线程上断言
+                results.add(executor.submit(() -> {
+                    int violations = 0;
+                    long previous = Long.MIN_VALUE;
+                    for (int i = 0; i < 50_000; i++) {
+                        long id = snowflake.nextId();
+                        if (id <= previous) {
+                            violations++;
+                        }
+                        previous = id;
+                        all.add(id);
+                    }
+                    return violations;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(0, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(200_000, all.size());
+
+        // 不同节点同时生成也不会冲突
+        Set<Long> nodeZero = new HashSet<>();
+        Snowflake other = new Snowflake(0);
+        for (int i = 0; i < 10_000; i++) {
+            nodeZero.add(other.nextId());
+        }
+        nodeZero.retainAll(all);
+        assertTrue(nodeZero.isEmpty());
+    }
+}
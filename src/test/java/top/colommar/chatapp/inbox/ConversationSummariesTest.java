@@ -0,0 +1,132 @@
+package top.colommar.chatapp.inbox;
+
+import org.junit.jupiter.api.Test;
+import top.colommar.chatapp.model.Conversation;
+import top.colommar.chatapp.model.ConversationReadMarker;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.repository.ConversationReadMarkerRepository;
+import top.colommar.chatapp.repository.ConversationRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationSummariesTest {
+
+    // 模拟数据库中的行
+    private final Map<String, Conversation> conversationRows = new HashMap<>();
+    private final Map<ConversationReadMarker.Key, ConversationReadMarker> markerRows = new HashMap<>();
+    private long nextId;
+
+    private ConversationSummaries open() {
+        ConversationRepository conversations = (ConversationRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ConversationRepository.class}, (proxy, method, args) ->
+                        switch (method.getName()) {
+                            case "findAll" -> new ArrayList<>(conversationRows.values());
+                            case "saveAll" -> {
+                                for (Object row : (Iterable<?>) args[0]) {
+                                    conversationRows.put(((Conversation) row).getId(), (Conversation) row);
+                                }
+                                yield args[0];
+                            }
+                            default -> throw new UnsupportedOperationException(method.getName());
+                        });
+        ConversationReadMarkerRepository markers = (ConversationReadMarkerRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ConversationReadMarkerRepository.class}, (proxy, method, args) ->
+                        switch (method.getName()) {
+                            case "findByUsername" -> markerRows.values().stream()
+                                    .filter(m -> m.getUsername().equals(args[0])).toList();
+                            case "saveAll" -> {
+                                for (Object row : (Iterable<?>) args[0]) {
+                                    ConversationReadMarker marker = (ConversationReadMarker) row;
+                                    markerRows.put(new ConversationReadMarker.Key(marker.getUsername(),
+                                            marker.getConversationId()), marker);
+                                }
+                                yield args[0];
+                            }
+                            default -> throw new UnsupportedOperationException(method.getName());
+                        });
+        return new ConversationSummaries(conversations, markers, 3_600_000);
+    }
+
+    private Message message(String sender, String receiver, String content, long timestamp) {
+        Message message = new Message(sender, receiver, content, new Date(timestamp));
+        message.setId(nextId++);
+        return message;
+    }
+
+    private static Map<String, Object> summary(List<Map<String, Object>> summaries, String receiver) {
+        return summaries.stream().filter(s -> Objects.equals(s.get("receiver"), receiver)).findFirst().orElseThrow();
+    }
+
+    @Test
+    void tracksLastMessageAndUnreadPerUser() {
+        ConversationSummaries summaries = open();
+        summaries.recorded(message("alice", null, "大家好", 1000));
+        summaries.recorded(message("alice", "bob", "hi bob", 2000));
+        summaries.recorded(message("carol", null, "hello", 3000));
+
+        List<Map<String, Object>> bob = summaries.summariesFor("bob");
+        assertEquals(2, bob.size());
+        // 最近有消息的会话在前
+        assertNull(bob.get(0).get("receiver"));
+        assertEquals(2L, bob.get(0).get("unread"));
+        assertEquals("hello", bob.get(0).get("lastContent"));
+        assertEquals("alice", bob.get(1).get("receiver"));
+        assertEquals(1L, bob.get(1).get("unread"));
+
+        // 发送者视为已读到自己发出的消息
+        List<Map<String, Object>> alice = summaries.summariesFor("alice");
+        assertEquals(1L, summary(alice, null).get("unread"));
+        assertEquals(0L, summary(alice, "bob").get("unread"));
+        assertEquals(1, summaries.summariesFor("carol").size());
+
+        // 已读位置早于会话最后一条消息时不清零
+        summaries.markRead("bob", null, 1000);
+        assertEquals(2L, summary(summaries.summariesFor("bob"), null).get("unread"));
+        summaries.markRead("bob", null, 3000);
+        assertEquals(0L, summary(summaries.summariesFor("bob"), null).get("unread"));
+
+        // 新注册用户不计入注册前的群聊消息
+        summaries.registered("dave");
+        assertEquals(0L, summary(summaries.summariesFor("dave"), null).get("unread"));
+    }
+
+    @Test
+    void restoresFromPersistedBatches() {
+        ConversationSummaries summaries = open();
+        summaries.recorded(message("alice", "bob", "first", 1000));
+        summaries.recorded(message("bob", "alice", "second", 2000));
+        summaries.recorded(message("alice", null, "group", 3000));
+        summaries.flush();
+        assertEquals(2, conversationRows.size());
+        assertEquals(3, markerRows.size());
+        summaries.close();
+
+        ConversationSummaries reopened = open();
+        Map<String, Object> bob = summary(reopened.summariesFor("bob"), "alice");
+        assertEquals("second", bob.get("lastContent"));
+        assertEquals(2000L, bob.get("lastTimestamp"));
+        assertEquals(0L, bob.get("unread"));
+        assertEquals(1L, summary(reopened.summariesFor("alice"), "bob").get("unread"));
+        assertEquals(1L, summary(reopened.summariesFor("bob"), null).get("unread"));
+    }
+
+    @Test
+    void keepsUnflushedReadPositionsAcrossLogout() {
+        ConversationSummaries summaries = open();
+        summaries.summariesFor("alice");
+        summaries.recorded(message("bob", null, "first", 1000));
+        summaries.recorded(message("alice", null, "second", 2000));
+        summaries.recorded(message("bob", null, "third", 3000));
+
+        // 下线后缓存被丢弃，尚未写回的已读位置重新载入时仍然可见
+        summaries.loggedOut("alice");
+        assertEquals(1L, summary(summaries.summariesFor("alice"), null).get("unread"));
+        summaries.loggedOut("alice");
+        summaries.flush();
+        assertEquals(2L, markerRows.get(new ConversationReadMarker.Key("alice", "")).getReadCount());
+        assertEquals(1L, summary(summaries.summariesFor("alice"), null).get("unread"));
+    }
+}
@@ -0,0 +1,50 @@
+package top.colommar.chatapp.media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThumbnailServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void downscalesKeepingAspectRatioNextToSource() throws Exception {
+        Path source = dir.resolve("photo.png");
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png", source.toFile());
+
+        Path thumbnail = ThumbnailService.generate(source, 320);
+
+        assertEquals(dir.resolve("photo.png.thumb.jpg"), thumbnail);
+        BufferedImage image = ImageIO.read(thumbnail.toFile());
+        assertEquals(320, image.getWidth());
+        assertEquals(160, image.getHeight());
+    }
+
+    @Test
+    void keepsTransparencyAsPng() throws Exception {
+        Path source = dir.resolve("icon.png");
+        ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB), "png", source.toFile());
+
+        Path thumbnail = ThumbnailService.generate(source, 320);
+
+        assertEquals(dir.resolve("icon.png.thumb.png"), thumbnail);
+        // 小图不放大
+        assertEquals(64, ImageIO.read(thumbnail.toFile()).getWidth());
+    }
+
+    @Test
+    void ignoresNonImages() throws Exception {
+        Path source = dir.resolve("notes.txt");
+        Files.writeString(source, "not an image");
+
+        assertNull(ThumbnailService.generate(source, 320));
+    }
+}
@@ -0,0 +1,66 @@
+package top.colommar.chatapp.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import top.colommar.chatapp.id.IdConfig;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.repository.MessageRepository;
+import top.colommar.chatapp.storage.archive.MessageArchive;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("local")
+@Import(IdConfig.class)
+class JpaMessageStoreTest {
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * id 在落库时分配，时间戳更早生成，较新的消息可能排在较旧的消息之前：
+     * 归档必须停在第一条不够旧的消息处，之后的旧消息留到下一轮，不能被 deleteThrough 一并删掉
+     */
+    @Test
+    void archivingStopsAtFirstMessageThatIsNotOldEnough() throws Exception {
+        long now = System.currentTimeMillis();
+        JpaMessageStore jpa = new JpaMessageStore(messageRepository);
+        List<Message> saved = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            // 第 3 条（下标 2）是新消息，其余都是旧消息
+            Date timestamp = new Date(i == 2 ? now : i);
+            saved.add(jpa.save(new Message("alice", null, "group " + i, timestamp)));
+        }
+
+        StorageProperties.Archive config = new StorageProperties.Archive();
+        config.setAfterMs(3_600_000);
+        config.setBatchSize(100);
+        config.setBlockMessages(4);
+        MessageArchive archive = new MessageArchive(dir, config.getBlockMessages());
+        try (TieredMessageStore store = new TieredMessageStore(jpa, archive, config)) {
+            assertEquals(2, store.archiveOnce());
+            assertEquals(saved.get(1).getId(), archive.lastArchivedId());
+
+            List<Long> hot = messageRepository.findAll().stream().map(Message::getId).sorted().toList();
+            assertEquals(saved.subList(2, 6).stream().map(Message::getId).toList(), hot);
+
+            List<String> contents = store.findHistory("bob", null, Long.MAX_VALUE, 10).stream()
+                    .map(Message::getContent).toList();
+            assertEquals(List.of("group 0", "group 1", "group 2", "group 3", "group 4", "group 5"), contents);
+        }
+    }
+}
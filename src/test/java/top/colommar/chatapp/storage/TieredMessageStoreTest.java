@@ -0,0 +1,136 @@
+package top.colommar.chatapp.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import top.colommar.chatapp.id.Snowflake;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.storage.archive.MessageArchive;
+import top.colommar.chatapp.storage.log.MessageLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredMessageStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private TieredMessageStore open() throws Exception {
+        StorageProperties.Log log = new StorageProperties.Log();
+        log.setSegmentBytes(1024);
+        log.setIndexIntervalBytes(64);
+        log.setFlush(StorageProperties.FlushPolicy.NEVER);
+        StorageProperties.Archive archive = new StorageProperties.Archive();
+        archive.setAfterMs(3_600_000);
+        archive.setBatchSize(30);
+        archive.setBlockMessages(8);
+        return new TieredMessageStore(new LogMessageStore(new MessageLog(dir.resolve("log"), log), new Snowflake(0)),
+                new MessageArchive(dir.resolve("archive"), archive.getBlockMessages()), archive);
+    }
+
+    /**
+     * 偶数为群聊，奇数为 alice 与 bob 的私聊；前 80 条是旧消息
+     */
+    private static List<Message> populate(MessageStore store) {
+        long now = System.currentTimeMillis();
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Date timestamp = new Date(i < 80 ? i : now);
+            Message message = i % 2 == 0
+                    ? new Message("alice", null, "group " + i, timestamp)
+                    : new Message(i % 4 == 1 ? "alice" : "bob", i % 4 == 1 ? "bob" : "alice", "private " + i, timestamp);
+            messages.add(store.save(message));
+        }
+        return messages;
+    }
+
+    private static List<String> pageThrough(MessageStore store, String username, String peer) {
+        List<String> contents = new ArrayList<>();
+        long before = Long.MAX_VALUE;
+        while (true) {
+            List<Message> page = store.findHistory(username, peer, before, 7);
+            if (page.isEmpty()) {
+                return contents;
+            }
+            List<String> pageContents = new ArrayList<>();
+            page.forEach(m -> pageContents.add(m.getContent()));
+            contents.addAll(0, pageContents);
+            before = page.get(0).getId();
+        }
+    }
+
+    private long countLogSegments() throws Exception {
+        try (Stream<Path> files = Files.list(dir.resolve("log"))) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void archivesOldMessagesAndPagesAcrossTiers() throws Exception {
+        List<String> expected = new ArrayList<>();
+        List<Long> hotGroupIds = new ArrayList<>();
+        try (TieredMessageStore store = open()) {
+            List<Message> messages = populate(store);
+            for (int i = 0; i < messages.size(); i++) {
+                if (i % 2 == 1) {
+                    expected.add(messages.get(i).getContent());
+                } else if (i >= 80) {
+                    hotGroupIds.add(messages.get(i).getId());
+                }
+            }
+
+            long segmentsBefore = countLogSegments();
+            assertEquals(80, store.archiveOnce());
+            assertEquals(0, store.archiveOnce());
+            assertTrue(countLogSegments() < segmentsBefore);
+
+            // 登录时的全量历史只包含热数据
+            assertEquals(hotGroupIds, store.findVisibleTo("carol").stream().map(Message::getId).toList());
+
+            assertEquals(expected, pageThrough(store, "bob", "alice"));
+            assertEquals(50, pageThrough(store, "carol", null).size());
+            assertTrue(pageThrough(store, "carol", "alice").isEmpty());
+        }
+
+        // 重启后归档段与热数据的分界不变
+        try (TieredMessageStore store = open()) {
+            assertEquals(expected, pageThrough(store, "alice", "bob"));
+            assertEquals(10, store.findVisibleTo("carol").size());
+        }
+    }
+
+    @Test
+    void closeWaitsForARunningArchivePass() throws Exception {
+        List<String> expected = new ArrayList<>();
+        TieredMessageStore store = open();
+        for (Message message : populate(store)) {
+            if (message.getReceiver() != null) {
+                expected.add(message.getContent());
+            }
+        }
+
+        CompletableFuture<Integer> pass = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store.archiveOnce();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        store.close();
+        // 归档要么在关闭前完整做完，要么根本没有开始
+        int archived = pass.get();
+        assertTrue(archived == 0 || archived == 80, "archived " + archived);
+        assertEquals(0, store.archiveOnce());
+
+        try (TieredMessageStore reopened = open()) {
+            assertEquals(expected, pageThrough(reopened, "alice", "bob"));
+        }
+    }
+}
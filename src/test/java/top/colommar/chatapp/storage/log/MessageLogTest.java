@@ -0,0 +1,169 @@
+package top.colommar.chatapp.storage.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import top.colommar.chatapp.model.Message;
+import top.colommar.chatapp.storage.StorageProperties;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageLogTest {
+
+    @TempDir
+    Path dir;
+
+    private static StorageProperties.Log config(int segmentBytes) {
+        StorageProperties.Log config = new StorageProperties.Log();
+        config.setSegmentBytes(segmentBytes);
+        config.setIndexIntervalBytes(64);
+        config.setFlush(StorageProperties.FlushPolicy.NEVER);
+        return config;
+    }
+
+    @Test
+    void appendAndReadBack() throws Exception {
+        try (MessageLog log = new MessageLog(dir, config(4096))) {
+            long first = log.append(new Message("alice", null, "大家好", new Date(1000)));
+            long second = log.append(new Message("bob", "alice", "hi", new Date(2000)));
+
+            assertEquals(0, first);
+            assertEquals(1, second);
+            Message read = log.read(second);
+            assertEquals("bob", read.getSender());
+            assertEquals("alice", read.getReceiver());
+            assertEquals("hi", read.getContent());
+            assertEquals(2000, read.getTimestamp().getTime());
+            assertNull(log.read(0).getReceiver());
+            assertNull(log.read(2));
+        }
+    }
+
+    @Test
+    void rollsSegmentsAndRecoversOnReopen() throws Exception {
+        try (MessageLog log = new MessageLog(dir, config(256))) {
+            for (int i = 0; i < 50; i++) {
+                log.append(new Message("user" + i, null, "message " + i, new Date(i)));
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.count() > 1);
+        }
+
+        try (MessageLog log = new MessageLog(dir, config(256))) {
+            assertEquals(50, log.nextOffset());
+            List<Message> all = log.readAll();
+            assertEquals(50, all.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i, all.get(i).getId());
+                assertEquals("message " + i, all.get(i).getContent());
+            }
+            assertEquals(50, log.append(new Message("carol", null, "after reopen", new Date(99))));
+            assertEquals("message 37", log.read(37).getContent());
+        }
+    }
+
+    @Test
+    void locatesArchivableRangeByTimestampAndId() throws Exception {
+        try (MessageLog log = new MessageLog(dir, config(256))) {
+            for (int i = 0; i < 50; i++) {
+                // 第 30 条的时间戳提前，之后的消息不能越过它归档
+                long timestamp = i == 30 ? 1000 : i;
+                log.append(new Message("alice", null, "message " + i, new Date(timestamp)));
+            }
+
+            assertEquals(20, log.offsetForTimestamp(20));
+            assertEquals(30, log.offsetForTimestamp(40));
+            assertEquals(50, log.offsetForTimestamp(2000));
+
+            List<Message> batch = log.readOlderThan(9, 40, 100);
+            assertEquals(20, batch.size());
+            assertEquals(10, batch.get(0).getId());
+            assertEquals(29, batch.get(batch.size() - 1).getId());
+            assertEquals(5, log.readOlderThan(9, 40, 5).size());
+            assertTrue(log.readOlderThan(29, 40, 100).isEmpty());
+        }
+    }
+
+    @Test
+    void readsOnlyConversationsVisibleToUser() throws Exception {
+        try (MessageLog log = new MessageLog(dir, config(512))) {
+            for (int i = 0; i < 30; i++) {
+                log.append(new Message("alice", "bob", "private " + i, new Date(i)));
+                log.append(new Message("carol", "dave", "other " + i, new Date(i)));
+                log.append(new Message("dave", null, "group " + i, new Date(i)));
+            }
+        }
+
+        // 重新打开后会话索引由恢复扫描重建
+        try (MessageLog log = new MessageLog(dir, config(512))) {
+            List<Message> visible = log.readVisibleTo("bob");
+            assertEquals(60, visible.size());
+            assertTrue(visible.stream().noneMatch(m -> m.getContent().startsWith("other")));
+            for (int i = 1; i < visible.size(); i++) {
+                assertTrue(visible.get(i - 1).getId() < visible.get(i).getId());
+            }
+            assertEquals(60, log.readVisibleTo("dave").size());
+        }
+    }
+
+    @Test
+    void retentionDeletesOldestSealedSegments() throws Exception {
+        StorageProperties.Log config = config(256);
+        config.setRetentionBytes(512);
+        try (MessageLog log = new MessageLog(dir, config)) {
+            for (int i = 0; i < 50; i++) {
+                log.append(new Message("alice", null, "message " + i, new Date(i)));
+            }
+            log.enforceRetention();
+
+            assertTrue(log.startOffset() > 0);
+            assertNull(log.read(0));
+            List<Message> visible = log.readVisibleTo("alice");
+            assertEquals(log.startOffset(), visible.get(0).getId());
+            assertEquals(49, visible.get(visible.size() - 1).getId());
+        }
+    }
+
+    @Test
+    void readsStayConsistentWhileOldSegmentsAreDeleted() throws Exception {
+        try (MessageLog log = new MessageLog(dir, config(256))) {
+            AtomicBoolean done = new AtomicBoolean();
+            Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+            Thread reader = new Thread(() -> {
+                while (!done.get()) {
+                    try {
+                        long offset = log.nextOffset() - 1;
+                        Message message = log.read(offset);
+                        if (offset >= 0 && (message == null || message.getId() != offset)) {
+                            failures.add(new AssertionError("offset " + offset + " read as " + message));
+                        }
+                        log.readVisibleTo("alice");
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            reader.start();
+            for (int i = 0; i < 2000; i++) {
+                log.append(new Message("alice", null, "message " + i, new Date(i)));
+                if (i % 50 == 0) {
+                    log.deleteThrough(i - 20);
+                }
+            }
+            done.set(true);
+            reader.join();
+
+            assertTrue(failures.isEmpty(), () -> failures.peek().toString());
+            assertTrue(log.startOffset() > 0);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package top.colommar.chatapp.trace;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageTracerTest {
+
+    @Test
+    void noopWhenNotRecordingOrSampled() {
+        // 同一 JVM 中应用上下文的常驻录制可能已开启事件，这里固定为不录制
+        MessageTracer tracer = new MessageTracer(0, 10, () -> false);
+        MessageTrace trace = tracer.decoded(tracer.start(10), "message", null);
+        assertSame(MessageTrace.NOOP, trace);
+        assertNull(trace.traceId());
+        // 采样关闭时忽略客户端的 traceId
+        assertSame(MessageTrace.NOOP, tracer.decoded(tracer.start(10), "message", "abc"));
+    }
+
+    @Test
+    void clientTracesAreRateLimited() {
+        MessageTracer tracer = new MessageTracer(1e-12, 2, () -> false);
+        assertEquals("a", tracer.decoded(tracer.start(10), "message", "a").traceId());
+        assertEquals("b", tracer.decoded(tracer.start(10), "message", "b").traceId());
+        assertSame(MessageTrace.NOOP, tracer.decoded(tracer.start(10), "message", "c"));
+    }
+
+    @Test
+    void recordsStagesAndFlushForClientTrace() throws Exception {
+        Path file = Files.createTempFile("trace", ".jfr");
+        MessageTracer tracer = new MessageTracer(1e-12, 10);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        try (Recording recording = new Recording()) {
+            recording.enable(MessageHandlingEvent.class);
+            recording.enable(MessageFlushEvent.class);
+            recording.start();
+
+            MessageTrace trace = tracer.decoded(tracer.start(42), "message", "abc");
+            assertEquals("abc", trace.traceId());
+            trace.persistStarted();
+            trace.persisted();
+            trace.fanoutStarted();
+            trace.wrote(channel.writeAndFlush("a"), 5);
+            trace.wrote(channel.writeAndFlush("b"), 5);
+            trace.fannedOut();
+            trace.finish();
+
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        RecordedEvent handling = single(events, "top.colommar.chatapp.MessageHandling");
+        assertEquals("abc", handling.getString("traceId"));
+        assertEquals("message", handling.getString("messageType"));
+        assertEquals(42, handling.getInt("payloadBytes"));
+        assertEquals(2, handling.getInt("recipients"));
+        assertEquals(10, handling.getLong("outboundBytes"));
+        RecordedEvent flush = single(events, "top.colommar.chatapp.MessageFlush");
+        assertEquals("abc", flush.getString("traceId"));
+        assertEquals(2, flush.getInt("recipients"));
+        assertEquals(0, flush.getInt("failed"));
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+}